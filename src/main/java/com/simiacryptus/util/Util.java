@@ -90,14 +90,32 @@ public class Util {
     }
   }
 
+  // The returned stream holds the file and a native inflater open until it is closed, so use it in try-with-resources
   public static RefStream<byte[]> binaryStream(final String path, @Nonnull final String name, final int skip,
                                                final int recordSize) throws IOException {
     @Nonnull final File file = new File(path, name);
-    final byte[] fileData = IOUtils
-        .toByteArray(new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))));
-    @Nonnull final DataInputStream in = new DataInputStream(new ByteArrayInputStream(fileData));
-    in.skip(skip);
-    return Util.toIterator(new BinaryChunkIterator(in, recordSize));
+    @Nonnull final FileInputStream fileIn = new FileInputStream(file);
+    // Decompress incrementally instead of buffering the whole file on the heap
+    @Nonnull final DataInputStream in;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new BufferedInputStream(fileIn), 1 << 16)));
+    } catch (@Nonnull final IOException | RuntimeException e) {
+      fileIn.close();
+      throw e;
+    }
+    try {
+      IOUtils.skipFully(in, skip);
+    } catch (@Nonnull final IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+    return Util.toIterator(new BinaryChunkIterator(in, recordSize)).onClose(() -> {
+      try {
+        in.close();
+      } catch (@Nonnull final IOException e) {
+        throw Util.throwException(e);
+      }
+    });
   }
 
   public static <F, T> Function<F, T> cache(@Nonnull final Function<F, T> inner) {
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Extremes cannot be decayed, so none are kept; WindowedStatistics reports min/max over a bounded window
+public class DecayingStatistics implements MonitoredItem {
+  private final double tauNanos;
+  @Nonnull
+  private final LongSupplier clock;
+  private long lastNanos;
+  private double weight = 0;
+  private double mean = 0;
+  private double sumSq = 0;
+
+  public DecayingStatistics(long halfLife, @Nonnull TimeUnit unit) {
+    this(halfLife, unit, System::nanoTime);
+  }
+
+  public DecayingStatistics(long halfLife, @Nonnull TimeUnit unit, @Nonnull LongSupplier clock) {
+    if (halfLife <= 0)
+      throw new IllegalArgumentException("halfLife = " + halfLife);
+    this.tauNanos = unit.toNanos(halfLife) / Math.log(2);
+    this.clock = clock;
+    this.lastNanos = clock.getAsLong();
+  }
+
+  public synchronized double getWeight() {
+    decay();
+    return weight;
+  }
+
+  public synchronized double getMean() {
+    return 0 == weight ? Double.NaN : mean;
+  }
+
+  public synchronized double getStdDev() {
+    return 0 == weight ? Double.NaN : Math.sqrt(sumSq / weight);
+  }
+
+  public synchronized double getRatePerSecond() {
+    decay();
+    return weight * 1e9 / tauNanos;
+  }
+
+  @Override
+  public synchronized Map<CharSequence, Object> getMetrics() {
+    @Nonnull final HashMap<CharSequence, Object> map = new HashMap<>();
+    decay();
+    map.put("weight", weight);
+    map.put("rate", getRatePerSecond());
+    map.put("mean", getMean());
+    map.put("stdDev", getStdDev());
+    return map;
+  }
+
+  public synchronized void add(final double v) {
+    decay();
+    weight += 1;
+    final double delta = v - mean;
+    mean += delta / weight;
+    sumSq += delta * (v - mean);
+  }
+
+  public synchronized void add(@Nonnull final double... values) {
+    for (final double v : values) {
+      add(v);
+    }
+  }
+
+  public synchronized void clear() {
+    weight = 0;
+    mean = 0;
+    sumSq = 0;
+    lastNanos = clock.getAsLong();
+  }
+
+  @Override
+  public String toString() {
+    return getMetrics().toString();
+  }
+
+  private void decay() {
+    final long now = clock.getAsLong();
+    final long elapsed = now - lastNanos;
+    if (elapsed > 0) {
+      final double factor = Math.exp(-elapsed / tauNanos);
+      weight *= factor;
+      sumSq *= factor;
+      lastNanos = now;
+    }
+  }
+}
@@ -24,6 +24,10 @@ import com.simiacryptus.ref.wrappers.*;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 public class DensityTree {
 
@@ -32,6 +36,9 @@ public class DensityTree {
   private int splitSizeThreshold = 10;
   private double minFitness = 4.0;
   private int maxDepth = Integer.MAX_VALUE;
+  private int parallelCutoff = 4096;
+  private int binCount = 0;
+  private boolean retainPoints = true;
 
   public DensityTree(CharSequence... columnNames) {
     this.columnNames = columnNames;
@@ -71,6 +78,36 @@ public class DensityTree {
     return this;
   }
 
+  public boolean isRetainPoints() {
+    return retainPoints;
+  }
+
+  @Nonnull
+  public DensityTree setRetainPoints(boolean retainPoints) {
+    this.retainPoints = retainPoints;
+    return this;
+  }
+
+  public int getBinCount() {
+    return binCount;
+  }
+
+  @Nonnull
+  public DensityTree setBinCount(int binCount) {
+    this.binCount = binCount;
+    return this;
+  }
+
+  public int getParallelCutoff() {
+    return parallelCutoff;
+  }
+
+  @Nonnull
+  public DensityTree setParallelCutoff(int parallelCutoff) {
+    this.parallelCutoff = parallelCutoff;
+    return this;
+  }
+
   public int getSplitSizeThreshold() {
     return splitSizeThreshold;
   }
@@ -81,6 +118,16 @@ public class DensityTree {
     return this;
   }
 
+  @Nonnull
+  public Node fit(@Nonnull double[][] points) {
+    return fit(ForkJoinPool.commonPool(), points);
+  }
+
+  @Nonnull
+  public Node fit(@Nonnull ForkJoinPool pool, @Nonnull double[][] points) {
+    return pool.invoke(ForkJoinTask.adapt(() -> new Node(points)));
+  }
+
   @Nonnull
   public Bounds getBounds(@Nonnull double[][] points) {
     int dim = points[0].length;
@@ -93,6 +140,61 @@ public class DensityTree {
     return new Bounds(max, min);
   }
 
+  @Nonnull
+  public double[][] getBinBoundaries(@Nonnull double[][] points) {
+    final int dims = points[0].length;
+    final double[][] boundaries = new double[dims][];
+    for (int d = 0; d < dims; d++) {
+      final QuantileSketch sketch = new QuantileSketch(Math.max(200, 4 * binCount));
+      for (double[] pt : points) {
+        if (Double.isFinite(pt[d]))
+          sketch.add(pt[d]);
+      }
+      boundaries[d] = SplitHistogram.boundaries(sketch, binCount);
+    }
+    return boundaries;
+  }
+
+  @Nonnull
+  private static int[][] sortIndex(@Nonnull double[][] points) {
+    final int dims = points[0].length;
+    final int[][] index = new int[dims][];
+    for (int d = 0; d < dims; d++) {
+      index[d] = sortIndex(points, d);
+    }
+    return index;
+  }
+
+  @Nonnull
+  private static int[] sortIndex(@Nonnull double[][] points, int dim) {
+    int count = 0;
+    for (double[] pt : points) {
+      if (Double.isFinite(pt[dim]))
+        count++;
+    }
+    final double[] keys = new double[count];
+    final int[] ids = new int[count];
+    int j = 0;
+    for (int i = 0; i < points.length; i++) {
+      if (Double.isFinite(points[i][dim])) {
+        keys[j] = points[i][dim];
+        ids[j++] = i;
+      }
+    }
+    KeyedSort.sort(keys, ids, 0, count - 1);
+    return ids;
+  }
+
+  static double volume(@Nonnull double[] max, @Nonnull double[] min) {
+    double volume = Double.NaN;
+    for (int d = 0; d < min.length; d++) {
+      final double x = max[d] - min[d];
+      if (Double.isFinite(x) && x > 0.0)
+        volume = Double.isNaN(volume) ? x : volume * x;
+    }
+    return volume;
+  }
+
   public class Bounds {
     @Nonnull
     public final double[] max;
@@ -107,10 +209,7 @@ public class DensityTree {
     }
 
     public double getVolume() {
-      int dim = min.length;
-      return RefIntStream.range(0, dim).mapToDouble(d -> {
-        return max[d] - min[d];
-      }).filter(x -> Double.isFinite(x) && x > 0.0).reduce((a, b) -> a * b).orElse(Double.NaN);
+      return volume(max, min);
     }
 
     @Nonnull
@@ -141,6 +240,14 @@ public class DensityTree {
       this.value = value;
     }
 
+    public int getDim() {
+      return dim;
+    }
+
+    public double getValue() {
+      return value;
+    }
+
     @Override
     public boolean eval(double[] pt) {
       return pt[dim] < value;
@@ -164,11 +271,12 @@ public class DensityTree {
   }
 
   public class Node {
-    @Nonnull
-    public final double[][] points;
     @Nonnull
     public final Bounds bounds;
     private final int depth;
+    private final int count;
+    @Nullable
+    public double[][] points;
     @Nullable
     private Node left = null;
     @Nullable
@@ -181,10 +289,26 @@ public class DensityTree {
     }
 
     public Node(@Nonnull double[][] points, int depth) {
+      this(points, depth, null, null);
+    }
+
+    private Node(@Nonnull double[][] points, int depth, @Nullable int[][] sorted, @Nullable double[][] boundaries) {
       this.points = points;
       this.bounds = getBounds(points);
       this.depth = depth;
-      split();
+      this.count = points.length;
+      split(sorted, boundaries);
+      if (!retainPoints)
+        this.points = null;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    @Nullable
+    public double[][] getPoints() {
+      return points;
     }
 
     public int getDepth() {
@@ -236,6 +360,59 @@ public class DensityTree {
       }
     }
 
+    public int getNodeCount() {
+      if (null == left || null == right)
+        return 1;
+      return 1 + left.getNodeCount() + right.getNodeCount();
+    }
+
+    @Nonnull
+    public FlatDensityTree compile() {
+      final int size = getNodeCount();
+      final Node[] queue = new Node[size];
+      final int[] levels = new int[size];
+      final int[] dims = new int[size];
+      final double[] thresholds = new double[size];
+      final int[] children = new int[size];
+      final int[] leafIds = new int[size];
+      final long[] counts = new long[size];
+      final double[] volumes = new double[size];
+      queue[0] = this;
+      int tail = 1;
+      // Breadth-first layout places siblings next to each other
+      for (int i = 0; i < tail; i++) {
+        final Node node = queue[i];
+        counts[i] = node.count;
+        volumes[i] = node.bounds.getVolume();
+        if (null == node.rule || null == node.left || null == node.right) {
+          dims[i] = -1;
+          children[i] = -1;
+          thresholds[i] = Double.NaN;
+          continue;
+        }
+        if (!(node.rule instanceof OrthoRule))
+          throw new IllegalArgumentException("Cannot compile rule " + node.rule);
+        final OrthoRule rule = (OrthoRule) node.rule;
+        dims[i] = rule.getDim();
+        thresholds[i] = rule.getValue();
+        children[i] = tail;
+        queue[tail] = node.left;
+        levels[tail] = levels[i] + 1;
+        // Same bit encoding as predict(), where branches below depth 31 overflow out of the id
+        leafIds[tail] = leafIds[i] + (levels[i] < 32 ? 1 << levels[i] : 0);
+        tail++;
+        queue[tail] = node.right;
+        levels[tail] = levels[i] + 1;
+        leafIds[tail] = leafIds[i];
+        tail++;
+      }
+      final String[] names = new String[columnNames.length];
+      for (int d = 0; d < names.length; d++) {
+        names[d] = columnNames[d].toString();
+      }
+      return new FlatDensityTree(names, dims, thresholds, children, leafIds, counts, volumes);
+    }
+
     @Nonnull
     @Override
     public String toString() {
@@ -244,37 +421,189 @@ public class DensityTree {
 
     @Nonnull
     public String code() {
+      final StringBuilder out = new StringBuilder();
+      code(out, "");
+      return out.toString();
+    }
+
+    private void code(@Nonnull StringBuilder out, @Nonnull String indent) {
+      // Indent while appending instead of re-indenting each subtree's finished text
+      append(out, indent, "// " + dataInfo());
       if (null != rule) {
         assert right != null;
         assert left != null;
-        return RefString.format("// %s\nif(%s) { // Fitness %s\n  %s\n} else {\n  %s\n}", dataInfo(), rule,
-            rule.fitness, left.code().replaceAll("\n", "\n  "), right.code().replaceAll("\n", "\n  "));
-      } else {
-        return "// " + dataInfo();
+        append(out, indent, RefString.format("\nif(%s) { // Fitness %s\n  ", rule, rule.fitness));
+        left.code(out, indent + "  ");
+        append(out, indent, "\n} else {\n  ");
+        right.code(out, indent + "  ");
+        append(out, indent, "\n}");
       }
     }
 
+    private void append(@Nonnull StringBuilder out, @Nonnull String indent, @Nonnull String text) {
+      out.append(indent.isEmpty() ? text : text.replace("\n", "\n" + indent));
+    }
+
     public void split() {
+      requirePoints();
+      split(null, null);
+    }
+
+    @Nullable
+    public Rule bestRule(int dim) {
+      return bestRule(dim, sortIndex(requirePoints(), dim));
+    }
+
+    @Nonnull
+    private double[][] requirePoints() {
+      if (null == points)
+        throw new IllegalStateException("Training points were released");
+      return points;
+    }
+
+    private void split(@Nullable int[][] sorted, @Nullable double[][] boundaries) {
       if (points.length <= splitSizeThreshold)
         return;
       if (maxDepth <= depth)
         return;
-      this.rule = RefIntStream.range(0, points[0].length).mapToObj(x -> x).flatMap(dim -> split_ortho(dim))
-          .filter(x -> Double.isFinite(x.fitness)).max(RefComparator.comparingDouble(x -> x.fitness)).orElse(null);
+      final boolean approximate = 0 < binCount;
+      final int[][] index = approximate ? null : null == sorted ? sortIndex(points) : sorted;
+      final double[][] bins = approximate && null == boundaries ? getBinBoundaries(points) : boundaries;
+      final boolean parallel = points.length >= parallelCutoff;
+      IntStream dims = IntStream.range(0, points[0].length);
+      if (parallel)
+        dims = dims.parallel();
+      this.rule = dims.mapToObj(dim -> approximate ? bestBinnedRule(dim, bins[dim]) : bestRule(dim, index[dim]))
+          .filter(x -> null != x).max(Comparator.comparingDouble(x -> x.fitness)).orElse(null);
       if (null == this.rule)
         return;
-      double[][] leftPts = RefArrays.stream(this.points).filter(pt -> rule.eval(pt)).toArray(i -> new double[i][]);
-      double[][] rightPts = RefArrays.stream(this.points).filter(pt -> !rule.eval(pt)).toArray(i -> new double[i][]);
-      assert leftPts.length + rightPts.length == this.points.length;
-      if (rightPts.length == 0 || leftPts.length == 0)
+      final boolean[] goesLeft = new boolean[points.length];
+      final int[] position = new int[points.length];
+      int leftCount = 0;
+      for (int i = 0; i < points.length; i++) {
+        goesLeft[i] = rule.eval(points[i]);
+        position[i] = goesLeft[i] ? leftCount++ : i - leftCount;
+      }
+      final int rightCount = points.length - leftCount;
+      if (rightCount == 0 || leftCount == 0)
         return;
-      this.left = new Node(leftPts, depth + 1);
-      this.right = new Node(rightPts, depth + 1);
+      final double[][] leftPts = new double[leftCount][];
+      final double[][] rightPts = new double[rightCount][];
+      for (int i = 0; i < points.length; i++) {
+        if (goesLeft[i]) {
+          leftPts[position[i]] = points[i];
+        } else {
+          rightPts[position[i]] = points[i];
+        }
+      }
+      final int[][] leftIndex = approximate ? null : new int[index.length][];
+      final int[][] rightIndex = approximate ? null : new int[index.length][];
+      if (!approximate) {
+        // Stable partition keeps each child's per-dimension order without re-sorting
+        for (int d = 0; d < index.length; d++) {
+          final int[] order = index[d];
+          int l = 0;
+          for (int i : order) {
+            if (goesLeft[i])
+              l++;
+          }
+          leftIndex[d] = new int[l];
+          rightIndex[d] = new int[order.length - l];
+          l = 0;
+          int r = 0;
+          for (int i : order) {
+            if (goesLeft[i]) {
+              leftIndex[d][l++] = position[i];
+            } else {
+              rightIndex[d][r++] = position[i];
+            }
+          }
+        }
+      }
+      if (parallel) {
+        ForkJoinTask<Node> leftTask = ForkJoinTask.adapt(() -> new Node(leftPts, depth + 1, leftIndex, bins)).fork();
+        this.right = new Node(rightPts, depth + 1, rightIndex, bins);
+        this.left = leftTask.join();
+      } else {
+        this.left = new Node(leftPts, depth + 1, leftIndex, bins);
+        this.right = new Node(rightPts, depth + 1, rightIndex, bins);
+      }
+    }
+
+    @Nullable
+    private Rule bestRule(int dim, @Nonnull int[] order) {
+      final int size = order.length;
+      if (0 == size)
+        return null;
+      final int minSize = (int) Math.max(size * minSplitFract, 1);
+      final double[] prefix = new double[size];
+      final double[] suffix = new double[size];
+      sweepVolumes(order, prefix, false);
+      sweepVolumes(order, suffix, true);
+      final double volume = bounds.getVolume();
+      double bestFitness = Double.NEGATIVE_INFINITY;
+      int best = -1;
+      for (int i = 1; i < size - 1; i++) {
+        if (!(points[order[i - 1]][dim] < points[order[i]][dim]))
+          continue;
+        int rightCount = size - i;
+        if (minSize >= i || minSize >= rightCount)
+          continue;
+        double fitness = -(i * Math.log(prefix[i - 1] / volume) + rightCount * Math.log(suffix[i] / volume))
+            / (size * Math.log(2));
+        if (fitness > minFitness && Double.isFinite(fitness) && fitness > bestFitness) {
+          bestFitness = fitness;
+          best = i;
+        }
+      }
+      if (best < 0)
+        return null;
+      @Nonnull
+      OrthoRule rule = new OrthoRule(dim, points[order[best]][dim]);
+      rule.fitness = bestFitness;
+      return rule;
+    }
+
+    @Nullable
+    private Rule bestBinnedRule(int dim, @Nonnull double[] boundaries) {
+      final SplitHistogram histogram = new SplitHistogram(dim, points[0].length, boundaries);
+      for (double[] pt : points) {
+        histogram.add(pt);
+      }
+      final double[] split = histogram.bestSplit(bounds.getVolume(), minSplitFract, minFitness);
+      if (null == split)
+        return null;
+      @Nonnull
+      OrthoRule rule = new OrthoRule(dim, split[0]);
+      rule.fitness = split[1];
+      return rule;
+    }
+
+    private void sweepVolumes(@Nonnull int[] order, @Nonnull double[] volumes, boolean reverse) {
+      final int dims = points[0].length;
+      final double[] max = new double[dims];
+      final double[] min = new double[dims];
+      final double[] first = points[order[reverse ? order.length - 1 : 0]];
+      for (int d = 0; d < dims; d++) {
+        max[d] = Double.isFinite(first[d]) ? first[d] : Double.NaN;
+        min[d] = max[d];
+      }
+      for (int j = 0; j < order.length; j++) {
+        final int k = reverse ? order.length - 1 - j : j;
+        final double[] pt = points[order[k]];
+        for (int d = 0; d < dims; d++) {
+          if (Double.isFinite(pt[d])) {
+            max[d] = Math.max(max[d], pt[d]);
+            min[d] = Math.min(min[d], pt[d]);
+          }
+        }
+        volumes[k] = volume(max, min);
+      }
     }
 
     @Nonnull
     public RefStream<Rule> split_ortho(int dim) {
-      double[][] sortedPoints = RefArrays.stream(points).filter(pt -> Double.isFinite(pt[dim]))
+      double[][] sortedPoints = RefArrays.stream(requirePoints()).filter(pt -> Double.isFinite(pt[dim]))
           .sorted(RefComparator.comparingDouble(pt -> pt[dim])).toArray(i -> new double[i][]);
       if (0 == sortedPoints.length)
         return RefStream.empty();
@@ -309,7 +638,7 @@ public class DensityTree {
 
     @Nonnull
     private CharSequence dataInfo() {
-      return RefString.format("Count: %s Volume: %s Region: %s", points.length, bounds.getVolume(), bounds);
+      return RefString.format("Count: %s Volume: %s Region: %s", count, bounds.getVolume(), bounds);
     }
   }
 }
@@ -19,14 +19,15 @@
 
 package com.simiacryptus.util.data;
 
-import com.simiacryptus.ref.wrappers.RefArrays;
 import com.simiacryptus.ref.wrappers.RefString;
 
 import javax.annotation.Nonnull;
+import java.nio.DoubleBuffer;
 import java.util.DoubleSummaryStatistics;
 import java.util.stream.Collector;
 
 public class DoubleStatistics extends DoubleSummaryStatistics {
+  private static final int BLOCK_SIZE = 256;
 
   @Nonnull
   public static Collector<Double, DoubleStatistics, DoubleStatistics> COLLECTOR = Collector.of(() -> new DoubleStatistics(),
@@ -62,12 +63,53 @@ public class DoubleStatistics extends DoubleSummaryStatistics {
 
   @Nonnull
   public DoubleStatistics accept(@Nonnull final double[] value) {
-    RefArrays.stream(value).forEach(value1 -> accept(value1));
-    return this;
+    return accept(value, 0, value.length);
+  }
+
+  @Nonnull
+  public DoubleStatistics accept(@Nonnull final double[] value, final int offset, final int length) {
+    // Accumulate without the monitor, then merge once
+    @Nonnull final DoubleStatistics batch = new DoubleStatistics();
+    final int end = offset + length;
+    for (int block = offset; block < end; block += BLOCK_SIZE) {
+      final int blockEnd = Math.min(end, block + BLOCK_SIZE);
+      double blockSumOfSquare = 0;
+      for (int i = block; i < blockEnd; i++) {
+        final double v = value[i];
+        batch.acceptUnsquared(v);
+        blockSumOfSquare += v * v;
+      }
+      batch.addSumOfSquare(blockSumOfSquare);
+    }
+    return combine(batch);
   }
 
   @Nonnull
-  public DoubleStatistics combine(@Nonnull final DoubleStatistics other) {
+  public DoubleStatistics accept(@Nonnull final DoubleBuffer value) {
+    // Consumes the remaining values, like a relative bulk get
+    if (value.hasArray()) {
+      accept(value.array(), value.arrayOffset() + value.position(), value.remaining());
+      value.position(value.limit());
+      return this;
+    }
+    @Nonnull final DoubleStatistics batch = new DoubleStatistics();
+    final int end = value.limit();
+    for (int block = value.position(); block < end; block += BLOCK_SIZE) {
+      final int blockEnd = Math.min(end, block + BLOCK_SIZE);
+      double blockSumOfSquare = 0;
+      for (int i = block; i < blockEnd; i++) {
+        final double v = value.get(i);
+        batch.acceptUnsquared(v);
+        blockSumOfSquare += v * v;
+      }
+      batch.addSumOfSquare(blockSumOfSquare);
+    }
+    value.position(end);
+    return combine(batch);
+  }
+
+  @Nonnull
+  public synchronized DoubleStatistics combine(@Nonnull final DoubleStatistics other) {
     super.combine(other);
     simpleSumOfSquare += other.simpleSumOfSquare;
     sumOfSquareWithCompensation(other.sumOfSquare);
@@ -87,6 +129,15 @@ public class DoubleStatistics extends DoubleSummaryStatistics {
         getMin() * scale, getMax() * scale, getCount());
   }
 
+  private void acceptUnsquared(final double value) {
+    super.accept(value);
+  }
+
+  private void addSumOfSquare(final double blockSumOfSquare) {
+    simpleSumOfSquare += blockSumOfSquare;
+    sumOfSquareWithCompensation(blockSumOfSquare);
+  }
+
   private void sumOfSquareWithCompensation(final double value) {
     final double tmp = value - sumOfSquareCompensation;
     final double velvel = sumOfSquare + tmp; // Little wolf of rounding error
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+public class FlatDensityTree {
+  static final int MAGIC = 0x53445431;
+  private static final int BLOCK_SIZE = 4096;
+  @Nonnull
+  final String[] columnNames;
+  @Nonnull
+  final int[] dims;
+  @Nonnull
+  final double[] thresholds;
+  @Nonnull
+  final int[] children;
+  @Nonnull
+  final int[] leafIds;
+  @Nonnull
+  final long[] counts;
+  @Nonnull
+  final double[] volumes;
+
+  public FlatDensityTree(@Nonnull String[] columnNames, @Nonnull int[] dims, @Nonnull double[] thresholds,
+                         @Nonnull int[] children, @Nonnull int[] leafIds, @Nonnull long[] counts, @Nonnull double[] volumes) {
+    assert dims.length == thresholds.length;
+    assert dims.length == children.length;
+    assert dims.length == leafIds.length;
+    assert dims.length == counts.length;
+    assert dims.length == volumes.length;
+    this.columnNames = columnNames;
+    this.dims = dims;
+    this.thresholds = thresholds;
+    this.children = children;
+    this.leafIds = leafIds;
+    this.counts = counts;
+    this.volumes = volumes;
+  }
+
+  @Nonnull
+  public static FlatDensityTree load(@Nonnull File file) throws IOException {
+    return MappedDensityTree.open(file).toFlat();
+  }
+
+  static int getHeaderSize(@Nonnull String[] columnNames) {
+    int size = 12;
+    for (String name : columnNames) {
+      size += 2 + name.getBytes(StandardCharsets.UTF_8).length;
+    }
+    return (size + 7) & ~7;
+  }
+
+  @Nonnull
+  public String[] getColumnNames() {
+    return columnNames.clone();
+  }
+
+  public int getNodeCount() {
+    return dims.length;
+  }
+
+  public boolean isLeaf(int node) {
+    return dims[node] < 0;
+  }
+
+  public int getDim(int node) {
+    return dims[node];
+  }
+
+  public double getThreshold(int node) {
+    return thresholds[node];
+  }
+
+  public int getLeft(int node) {
+    return children[node];
+  }
+
+  public int getRight(int node) {
+    return children[node] + 1;
+  }
+
+  public int getLeafId(int node) {
+    return leafIds[node];
+  }
+
+  public long getCount(int node) {
+    return counts[node];
+  }
+
+  public double getVolume(int node) {
+    return volumes[node];
+  }
+
+  public int leaf(@Nonnull double[] pt) {
+    int node = 0;
+    for (int dim = dims[node]; dim >= 0; dim = dims[node]) {
+      node = children[node] + (pt[dim] < thresholds[node] ? 0 : 1);
+    }
+    return node;
+  }
+
+  public int predict(@Nonnull double[] pt) {
+    return leafIds[leaf(pt)];
+  }
+
+  @Nonnull
+  public int[] predict(@Nonnull double[][] points) {
+    return predict(points, false);
+  }
+
+  @Nonnull
+  public int[] predict(@Nonnull double[][] points, boolean parallel) {
+    final int[] result = new int[points.length];
+    final int blocks = (points.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    IntStream stream = IntStream.range(0, blocks);
+    if (parallel)
+      stream = stream.parallel();
+    stream.forEach(block -> {
+      final int from = block * BLOCK_SIZE;
+      predict(points, from, Math.min(points.length, from + BLOCK_SIZE), result);
+    });
+    return result;
+  }
+
+  public void predict(@Nonnull double[][] points, int from, int to, @Nonnull int[] result) {
+    final int[] dims = this.dims;
+    final double[] thresholds = this.thresholds;
+    final int[] children = this.children;
+    // Advance every point one level per pass so the upper tree levels stay hot in cache
+    for (int i = from; i < to; i++) {
+      result[i] = 0;
+    }
+    boolean active = true;
+    while (active) {
+      active = false;
+      for (int i = from; i < to; i++) {
+        final int node = result[i];
+        final int dim = dims[node];
+        if (dim >= 0) {
+          result[i] = children[node] + (points[i][dim] < thresholds[node] ? 0 : 1);
+          active = true;
+        }
+      }
+    }
+    for (int i = from; i < to; i++) {
+      result[i] = leafIds[result[i]];
+    }
+  }
+
+  public long getSerializedSize() {
+    return getHeaderSize(columnNames) + 36L * dims.length;
+  }
+
+  public void writeTo(@Nonnull ByteBuffer buffer) {
+    final int start = buffer.position();
+    buffer.putInt(MAGIC);
+    buffer.putInt(dims.length);
+    buffer.putInt(columnNames.length);
+    for (String name : columnNames) {
+      final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      buffer.putShort((short) bytes.length);
+      buffer.put(bytes);
+    }
+    // Doubles and longs first so every section stays 8-byte aligned for the mapped reader
+    buffer.position(start + getHeaderSize(columnNames));
+    buffer.asDoubleBuffer().put(thresholds);
+    buffer.position(buffer.position() + 8 * dims.length);
+    buffer.asDoubleBuffer().put(volumes);
+    buffer.position(buffer.position() + 8 * dims.length);
+    buffer.asLongBuffer().put(counts);
+    buffer.position(buffer.position() + 8 * dims.length);
+    buffer.asIntBuffer().put(dims);
+    buffer.position(buffer.position() + 4 * dims.length);
+    buffer.asIntBuffer().put(children);
+    buffer.position(buffer.position() + 4 * dims.length);
+    buffer.asIntBuffer().put(leafIds);
+    buffer.position(buffer.position() + 4 * dims.length);
+  }
+
+  public void save(@Nonnull File file) throws IOException {
+    final long size = getSerializedSize();
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("Tree too large: " + size + " bytes");
+    final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+    writeTo(buffer);
+    buffer.flip();
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("FlatDensityTree{nodes=%s, columns=%s}", dims.length, columnNames.length);
+  }
+}
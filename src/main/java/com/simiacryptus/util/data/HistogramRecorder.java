@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HistogramRecorder implements MonitoredItem {
+  private final int subBucketBits;
+  private final long maxValue;
+  private final int stripeMask;
+  private final LogLinearHistogram total;
+  // Writers register in the current phase; the reader flips phases and waits for stragglers
+  private final AtomicLong startEpoch = new AtomicLong(0);
+  private final AtomicLong evenEndEpoch = new AtomicLong(0);
+  private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+  @Nonnull
+  private volatile LogLinearHistogram[] active;
+  @Nonnull
+  private LogLinearHistogram[] inactive;
+
+  public HistogramRecorder() {
+    this(7, Long.MAX_VALUE);
+  }
+
+  public HistogramRecorder(int subBucketBits, long maxValue) {
+    this(subBucketBits, maxValue, Runtime.getRuntime().availableProcessors());
+  }
+
+  public HistogramRecorder(int subBucketBits, long maxValue, int stripes) {
+    this.subBucketBits = subBucketBits;
+    this.maxValue = maxValue;
+    int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.stripeMask = stripeCount - 1;
+    this.active = newStripes(stripeCount);
+    this.inactive = newStripes(stripeCount);
+    this.total = new LogLinearHistogram(subBucketBits, maxValue);
+  }
+
+  @Nonnull
+  public synchronized LogLinearHistogram getTotal() {
+    // Values recorded since the last interval are still in the active stripes
+    LogLinearHistogram copy = total.copy();
+    for (LogLinearHistogram stripe : active) {
+      copy.add(stripe);
+    }
+    return copy;
+  }
+
+  @Override
+  public Map<CharSequence, Object> getMetrics() {
+    return getTotal().getMetrics();
+  }
+
+  public void record(long value) {
+    long epoch = startEpoch.getAndIncrement();
+    try {
+      active[(int) Thread.currentThread().getId() & stripeMask].record(value);
+    } finally {
+      if (epoch < 0) {
+        oddEndEpoch.getAndIncrement();
+      } else {
+        evenEndEpoch.getAndIncrement();
+      }
+    }
+  }
+
+  public void recordNanos(long startNanos) {
+    record(Math.max(0, System.nanoTime() - startNanos));
+  }
+
+  @Nonnull
+  public synchronized LogLinearHistogram getIntervalHistogram() {
+    for (LogLinearHistogram stripe : inactive) {
+      stripe.reset();
+    }
+    LogLinearHistogram[] previous = active;
+    active = inactive;
+    inactive = previous;
+    flipPhase();
+    LogLinearHistogram interval = new LogLinearHistogram(subBucketBits, maxValue);
+    for (LogLinearHistogram stripe : previous) {
+      interval.add(stripe);
+    }
+    total.add(interval);
+    return interval;
+  }
+
+  public synchronized void reset() {
+    getIntervalHistogram();
+    total.reset();
+  }
+
+  @Override
+  public String toString() {
+    return getTotal().toString();
+  }
+
+  private void flipPhase() {
+    boolean nextPhaseIsEven = startEpoch.get() < 0;
+    long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+    (nextPhaseIsEven ? evenEndEpoch : oddEndEpoch).set(initialStartValue);
+    long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+    AtomicLong endEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+    while (endEpoch.get() != startValueAtFlip) {
+      Thread.yield();
+    }
+  }
+
+  @Nonnull
+  private LogLinearHistogram[] newStripes(int count) {
+    LogLinearHistogram[] stripes = new LogLinearHistogram[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new LogLinearHistogram(subBucketBits, maxValue);
+    }
+    return stripes;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+
+final class KeyedSort {
+  private KeyedSort() {
+  }
+
+  static int compare(double keyA, int idA, double keyB, int idB) {
+    int cmp = Double.compare(keyA, keyB);
+    return 0 != cmp ? cmp : Integer.compare(idA, idB);
+  }
+
+  static void sort(@Nonnull double[] keys, @Nonnull int[] ids, int lo, int hi) {
+    while (hi - lo > 16) {
+      int mid = (lo + hi) >>> 1;
+      double pivotKey = keys[mid];
+      int pivotId = ids[mid];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (compare(keys[i], ids[i], pivotKey, pivotId) < 0)
+          i++;
+        while (compare(keys[j], ids[j], pivotKey, pivotId) > 0)
+          j--;
+        if (i <= j) {
+          swap(keys, ids, i++, j--);
+        }
+      }
+      // Recurse into the smaller half to bound stack depth
+      if (j - lo < hi - i) {
+        sort(keys, ids, lo, j);
+        lo = i;
+      } else {
+        sort(keys, ids, i, hi);
+        hi = j;
+      }
+    }
+    for (int i = lo + 1; i <= hi; i++) {
+      for (int j = i; j > lo && compare(keys[j - 1], ids[j - 1], keys[j], ids[j]) > 0; j--) {
+        swap(keys, ids, j - 1, j);
+      }
+    }
+  }
+
+  private static void swap(@Nonnull double[] keys, @Nonnull int[] ids, int a, int b) {
+    double key = keys[a];
+    keys[a] = keys[b];
+    keys[b] = key;
+    int id = ids[a];
+    ids[a] = ids[b];
+    ids[b] = id;
+  }
+}
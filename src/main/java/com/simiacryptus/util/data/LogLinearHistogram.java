@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@SuppressWarnings("serial")
+public class LogLinearHistogram implements MonitoredItem, Serializable {
+  private final int subBucketBits;
+  private final int subBucketCount;
+  private final long maxValue;
+  @Nonnull
+  private final AtomicLongArray counts;
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  public LogLinearHistogram() {
+    this(7, Long.MAX_VALUE);
+  }
+
+  public LogLinearHistogram(int subBucketBits, long maxValue) {
+    if (subBucketBits < 1 || subBucketBits > 16)
+      throw new IllegalArgumentException("subBucketBits = " + subBucketBits);
+    if (maxValue < 1)
+      throw new IllegalArgumentException("maxValue = " + maxValue);
+    this.subBucketBits = subBucketBits;
+    this.subBucketCount = 1 << subBucketBits;
+    this.maxValue = maxValue;
+    this.counts = new AtomicLongArray(indexOf(maxValue) + 1);
+  }
+
+  public int getSubBucketBits() {
+    return subBucketBits;
+  }
+
+  public long getMaxValue() {
+    return maxValue;
+  }
+
+  public int getBucketCount() {
+    return counts.length();
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public long getMin() {
+    return min.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long count = totalCount.get();
+    return 0 == count ? Double.NaN : (double) sum.get() / count;
+  }
+
+  public double getStdDev() {
+    long count = 0;
+    double sum1 = 0;
+    double sum2 = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      long n = counts.get(i);
+      if (0 < n) {
+        double value = midpoint(i);
+        count += n;
+        sum1 += n * value;
+        sum2 += n * value * value;
+      }
+    }
+    if (0 == count)
+      return Double.NaN;
+    double mean = sum1 / count;
+    return Math.sqrt(Math.max(0, sum2 / count - mean * mean));
+  }
+
+  @Override
+  public Map<CharSequence, Object> getMetrics() {
+    @Nonnull final HashMap<CharSequence, Object> map = new HashMap<>();
+    long count = getCount();
+    map.put("count", count);
+    if (0 < count) {
+      map.put("min", getMin());
+      map.put("max", getMax());
+      map.put("mean", getMean());
+      map.put("stdDev", getStdDev());
+      map.put("tp50", getValueAtPercentile(0.5));
+      map.put("tp90", getValueAtPercentile(0.9));
+      map.put("tp99", getValueAtPercentile(0.99));
+      map.put("tp999", getValueAtPercentile(0.999));
+    }
+    return map;
+  }
+
+  public void record(long value) {
+    record(value, 1);
+  }
+
+  public void record(long value, long count) {
+    if (value < 0)
+      throw new IllegalArgumentException("value = " + value);
+    counts.getAndAdd(indexOf(Math.min(value, maxValue)), count);
+    totalCount.getAndAdd(count);
+    sum.getAndAdd(value * count);
+    if (value < min.get())
+      min.accumulateAndGet(value, Math::min);
+    if (value > max.get())
+      max.accumulateAndGet(value, Math::max);
+  }
+
+  public long getValueAtPercentile(double percentile) {
+    long count = totalCount.get();
+    if (0 == count)
+      return 0;
+    long target = Math.max(1, (long) Math.ceil(Math.min(1.0, percentile) * count));
+    long cumulative = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target)
+        return Math.max(Math.min(highestEquivalentValue(i), max.get()), min.get());
+    }
+    return max.get();
+  }
+
+  public long getCountAt(int index) {
+    return counts.get(index);
+  }
+
+  @Nonnull
+  public LogLinearHistogram copy() {
+    LogLinearHistogram copy = new LogLinearHistogram(subBucketBits, maxValue);
+    copy.add(this);
+    return copy;
+  }
+
+  @Nonnull
+  public LogLinearHistogram add(@Nonnull LogLinearHistogram other) {
+    if (other.subBucketBits != subBucketBits || other.counts.length() != counts.length())
+      throw new IllegalArgumentException("Incompatible histogram layout");
+    for (int i = 0; i < counts.length(); i++) {
+      long n = other.counts.get(i);
+      if (0 != n)
+        counts.getAndAdd(i, n);
+    }
+    totalCount.getAndAdd(other.totalCount.get());
+    sum.getAndAdd(other.sum.get());
+    min.accumulateAndGet(other.min.get(), Math::min);
+    max.accumulateAndGet(other.max.get(), Math::max);
+    return this;
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    sum.set(0);
+    min.set(Long.MAX_VALUE);
+    max.set(Long.MIN_VALUE);
+  }
+
+  public long lowestEquivalentValue(int index) {
+    if (index < subBucketCount)
+      return index;
+    int half = subBucketCount >> 1;
+    int shift = (index - subBucketCount) / half + 1;
+    long mantissa = half + (index - subBucketCount) % half;
+    return mantissa << shift;
+  }
+
+  public long highestEquivalentValue(int index) {
+    if (index < subBucketCount)
+      return index;
+    int half = subBucketCount >> 1;
+    int shift = (index - subBucketCount) / half + 1;
+    return lowestEquivalentValue(index) + (1L << shift) - 1;
+  }
+
+  @Override
+  public String toString() {
+    return getMetrics().toString();
+  }
+
+  private double midpoint(int index) {
+    return (lowestEquivalentValue(index) + (double) highestEquivalentValue(index)) / 2;
+  }
+
+  // Values below subBucketCount map linearly; above, each power of two is split into subBucketCount/2 buckets
+  private int indexOf(long value) {
+    if (value < subBucketCount)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - subBucketBits + 1;
+    int half = subBucketCount >> 1;
+    return subBucketCount + (shift - 1) * half + (int) ((value >>> shift) - half);
+  }
+}
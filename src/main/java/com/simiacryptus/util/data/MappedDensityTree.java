@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public final class MappedDensityTree {
+  @Nonnull
+  private final String[] columnNames;
+  @Nonnull
+  private final DoubleBuffer thresholds;
+  @Nonnull
+  private final DoubleBuffer volumes;
+  @Nonnull
+  private final LongBuffer counts;
+  @Nonnull
+  private final IntBuffer dims;
+  @Nonnull
+  private final IntBuffer children;
+  @Nonnull
+  private final IntBuffer leafIds;
+
+  public MappedDensityTree(@Nonnull ByteBuffer buffer) throws IOException {
+    final ByteBuffer data = buffer.duplicate();
+    final int start = data.position();
+    if (data.getInt() != FlatDensityTree.MAGIC)
+      throw new IOException("Not a density tree file");
+    final int nodes = data.getInt();
+    this.columnNames = new String[data.getInt()];
+    for (int d = 0; d < columnNames.length; d++) {
+      final byte[] bytes = new byte[data.getShort() & 0xFFFF];
+      data.get(bytes);
+      columnNames[d] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    int offset = start + FlatDensityTree.getHeaderSize(columnNames);
+    if (data.limit() - offset < 36L * nodes)
+      throw new IOException("Truncated density tree file");
+    this.thresholds = section(data, offset, 8 * nodes).asDoubleBuffer();
+    offset += 8 * nodes;
+    this.volumes = section(data, offset, 8 * nodes).asDoubleBuffer();
+    offset += 8 * nodes;
+    this.counts = section(data, offset, 8 * nodes).asLongBuffer();
+    offset += 8 * nodes;
+    this.dims = section(data, offset, 4 * nodes).asIntBuffer();
+    offset += 4 * nodes;
+    this.children = section(data, offset, 4 * nodes).asIntBuffer();
+    offset += 4 * nodes;
+    this.leafIds = section(data, offset, 4 * nodes).asIntBuffer();
+  }
+
+  @Nonnull
+  public static MappedDensityTree open(@Nonnull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      return new MappedDensityTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  @Nonnull
+  private static ByteBuffer section(@Nonnull ByteBuffer data, int offset, int length) {
+    final ByteBuffer section = data.duplicate();
+    section.limit(offset + length);
+    section.position(offset);
+    return section.slice();
+  }
+
+  @Nonnull
+  public String[] getColumnNames() {
+    return columnNames.clone();
+  }
+
+  public int getNodeCount() {
+    return dims.limit();
+  }
+
+  public boolean isLeaf(int node) {
+    return dims.get(node) < 0;
+  }
+
+  public int getDim(int node) {
+    return dims.get(node);
+  }
+
+  public double getThreshold(int node) {
+    return thresholds.get(node);
+  }
+
+  public int getLeft(int node) {
+    return children.get(node);
+  }
+
+  public int getRight(int node) {
+    return children.get(node) + 1;
+  }
+
+  public int getLeafId(int node) {
+    return leafIds.get(node);
+  }
+
+  public long getCount(int node) {
+    return counts.get(node);
+  }
+
+  public double getVolume(int node) {
+    return volumes.get(node);
+  }
+
+  public int leaf(@Nonnull double[] pt) {
+    int node = 0;
+    for (int dim = dims.get(node); dim >= 0; dim = dims.get(node)) {
+      node = children.get(node) + (pt[dim] < thresholds.get(node) ? 0 : 1);
+    }
+    return node;
+  }
+
+  public int predict(@Nonnull double[] pt) {
+    return leafIds.get(leaf(pt));
+  }
+
+  @Nonnull
+  public int[] predict(@Nonnull double[][] points) {
+    final int[] result = new int[points.length];
+    for (int i = 0; i < points.length; i++) {
+      result[i] = predict(points[i]);
+    }
+    return result;
+  }
+
+  @Nonnull
+  public FlatDensityTree toFlat() {
+    final int nodes = getNodeCount();
+    final double[] thresholds = new double[nodes];
+    final double[] volumes = new double[nodes];
+    final long[] counts = new long[nodes];
+    final int[] dims = new int[nodes];
+    final int[] children = new int[nodes];
+    final int[] leafIds = new int[nodes];
+    this.thresholds.duplicate().get(thresholds);
+    this.volumes.duplicate().get(volumes);
+    this.counts.duplicate().get(counts);
+    this.dims.duplicate().get(dims);
+    this.children.duplicate().get(children);
+    this.leafIds.duplicate().get(leafIds);
+    return new FlatDensityTree(columnNames.clone(), dims, thresholds, children, leafIds, counts, volumes);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MappedDensityTree{nodes=%s, columns=%s}", getNodeCount(), columnNames.length);
+  }
+}
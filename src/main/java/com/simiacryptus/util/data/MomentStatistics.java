@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collector;
+
+@SuppressWarnings("serial")
+public class MomentStatistics implements MonitoredItem, Serializable {
+
+  @Nonnull
+  public static final Collector<Double, MomentStatistics, MomentStatistics> COLLECTOR = Collector.of(() -> new MomentStatistics(),
+      (statistics, value) -> statistics.add(value), (statistics, other) -> statistics.merge(other), d -> d);
+
+  private long count = 0;
+  private double mean = 0;
+  private double m2 = 0;
+  private double m3 = 0;
+  private double m4 = 0;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private long negatives = 0;
+  private long positives = 0;
+  private long zeros = 0;
+  private double sumLog = 0;
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized double getMean() {
+    return 0 == count ? Double.NaN : mean;
+  }
+
+  public synchronized double getSum() {
+    return mean * count;
+  }
+
+  public synchronized double getMin() {
+    return min;
+  }
+
+  public synchronized double getMax() {
+    return max;
+  }
+
+  public synchronized long getZeros() {
+    return zeros;
+  }
+
+  public synchronized double getMeanPower() {
+    return sumLog / (count - zeros);
+  }
+
+  public synchronized double getVariance() {
+    return 0 == count ? Double.NaN : m2 / count;
+  }
+
+  public synchronized double getSampleVariance() {
+    return count < 2 ? Double.NaN : m2 / (count - 1);
+  }
+
+  public double getStdDev() {
+    return Math.sqrt(getVariance());
+  }
+
+  public synchronized double getSkewness() {
+    return 0 == m2 ? Double.NaN : Math.sqrt(count) * m3 / Math.pow(m2, 1.5);
+  }
+
+  public synchronized double getKurtosis() {
+    return 0 == m2 ? Double.NaN : count * m4 / (m2 * m2) - 3;
+  }
+
+  @Override
+  public synchronized Map<CharSequence, Object> getMetrics() {
+    @Nonnull final HashMap<CharSequence, Object> map = new HashMap<>();
+    map.put("count", count);
+    map.put("sum", getSum());
+    map.put("negative", negatives);
+    map.put("positive", positives);
+    map.put("min", min);
+    map.put("max", max);
+    map.put("mean", getMean());
+    map.put("stdDev", getStdDev());
+    map.put("skewness", getSkewness());
+    map.put("kurtosis", getKurtosis());
+    map.put("meanExponent", getMeanPower());
+    map.put("zeros", zeros);
+    return map;
+  }
+
+  public synchronized void add(final double v) {
+    final long n0 = count;
+    final long n = ++count;
+    final double delta = v - mean;
+    final double deltaN = delta / n;
+    final double deltaN2 = deltaN * deltaN;
+    final double term = delta * deltaN * n0;
+    mean += deltaN;
+    m4 += term * deltaN2 * ((double) n * n - 3 * n + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+    m3 += term * deltaN * (n - 2) - 3 * deltaN * m2;
+    m2 += term;
+    min = Math.min(min, v);
+    max = Math.max(max, v);
+    if (Math.abs(v) < ScalarStatistics.zeroTol) {
+      zeros++;
+    } else {
+      if (v < 0) {
+        negatives++;
+      } else {
+        positives++;
+      }
+      sumLog += Math.log10(Math.abs(v));
+    }
+  }
+
+  @Nonnull
+  public MomentStatistics add(@Nonnull final double... values) {
+    @Nonnull final MomentStatistics batch = new MomentStatistics();
+    for (final double v : values) {
+      batch.add(v);
+    }
+    return merge(batch);
+  }
+
+  @Nonnull
+  public MomentStatistics merge(@Nonnull final MomentStatistics other) {
+    // Snapshot first so that two instances merging into each other never hold both monitors
+    @Nonnull final MomentStatistics right = other.copy();
+    synchronized (this) {
+      if (0 == right.count)
+        return this;
+      if (0 == count) {
+        copyFrom(right);
+        return this;
+      }
+      // Chan et al. pairwise combination of central moments
+      final double na = count;
+      final double nb = right.count;
+      final double n = na + nb;
+      final double delta = right.mean - mean;
+      final double delta2 = delta * delta;
+      final double m2 = this.m2 + right.m2 + delta2 * na * nb / n;
+      final double m3 = this.m3 + right.m3 + delta2 * delta * na * nb * (na - nb) / (n * n)
+          + 3 * delta * (na * right.m2 - nb * this.m2) / n;
+      final double m4 = this.m4 + right.m4 + delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb) / (n * n * n)
+          + 6 * delta2 * (na * na * right.m2 + nb * nb * this.m2) / (n * n) + 4 * delta * (na * right.m3 - nb * this.m3) / n;
+      this.mean += delta * nb / n;
+      this.m2 = m2;
+      this.m3 = m3;
+      this.m4 = m4;
+      this.count += right.count;
+      this.min = Math.min(min, right.min);
+      this.max = Math.max(max, right.max);
+      this.negatives += right.negatives;
+      this.positives += right.positives;
+      this.zeros += right.zeros;
+      this.sumLog += right.sumLog;
+      return this;
+    }
+  }
+
+  @Nonnull
+  public synchronized MomentStatistics copy() {
+    @Nonnull final MomentStatistics copy = new MomentStatistics();
+    copy.copyFrom(this);
+    return copy;
+  }
+
+  public synchronized void clear() {
+    copyFrom(new MomentStatistics());
+  }
+
+  @Override
+  public String toString() {
+    return getMetrics().toString();
+  }
+
+  private void copyFrom(@Nonnull final MomentStatistics other) {
+    count = other.count;
+    mean = other.mean;
+    m2 = other.m2;
+    m3 = other.m3;
+    m4 = other.m4;
+    min = other.min;
+    max = other.max;
+    negatives = other.negatives;
+    positives = other.positives;
+    zeros = other.zeros;
+    sumLog = other.sumLog;
+  }
+}
@@ -21,15 +21,25 @@ package com.simiacryptus.util.data;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 
 @SuppressWarnings("serial")
 public class PercentileStatistics extends ScalarStatistics {
 
-  private final List<double[]> values = new ArrayList<>();
+  private final QuantileSketch sketch;
+
+  public PercentileStatistics() {
+    this(new QuantileSketch());
+  }
+
+  public PercentileStatistics(@Nonnull final QuantileSketch sketch) {
+    this.sketch = sketch;
+  }
+
+  @Nonnull
+  public QuantileSketch getSketch() {
+    return sketch;
+  }
 
   @Override
   public Map<CharSequence, Object> getMetrics() {
@@ -40,23 +50,28 @@ public class PercentileStatistics extends ScalarStatistics {
     return map;
   }
 
+  @Override
+  public void add(final double v) {
+    sketch.add(v);
+    super.add(v);
+  }
+
   @Nullable
   @Override
-  public synchronized ScalarStatistics add(@Nonnull final double... values) {
-    this.values.add(Arrays.copyOf(values, values.length));
+  public ScalarStatistics add(@Nonnull final double... values) {
+    sketch.add(values);
     super.add(values);
     return null;
   }
 
   @Override
-  public void clear() {
-    values.clear();
+  public synchronized void clear() {
+    sketch.clear();
     super.clear();
   }
 
-  public synchronized Double getPercentile(final double percentile) {
-    return values.parallelStream().flatMapToDouble(x -> Arrays.stream(x)).sorted()
-        .skip((int) (percentile * values.size())).findFirst().orElse(Double.NaN);
+  public Double getPercentile(final double percentile) {
+    return sketch.getQuantile(percentile);
   }
 
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.FastRandom;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.Arrays;
+
+@SuppressWarnings("serial")
+public class QuantileSketch implements Serializable {
+  private static final double DECAY = 2.0 / 3.0;
+  private final int k;
+  private double[][] levels = new double[][]{new double[8]};
+  private int[] sizes = new int[1];
+  private long count = 0;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private long random = 0x2545F4914F6CDD1DL;
+  private transient double[] sortedValues = null;
+  private transient long[] sortedWeights = null;
+
+  public QuantileSketch() {
+    this(200);
+  }
+
+  public QuantileSketch(int k) {
+    if (k < 8)
+      throw new IllegalArgumentException("k = " + k);
+    this.k = k;
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized double getMin() {
+    return 0 == count ? Double.NaN : min;
+  }
+
+  public synchronized double getMax() {
+    return 0 == count ? Double.NaN : max;
+  }
+
+  public synchronized int getRetained() {
+    int retained = 0;
+    for (int size : sizes) {
+      retained += size;
+    }
+    return retained;
+  }
+
+  public synchronized void add(final double value) {
+    if (Double.isNaN(value))
+      return;
+    append(0, value);
+    count++;
+    if (value < min)
+      min = value;
+    if (value > max)
+      max = value;
+    sortedValues = null;
+    if (sizes[0] >= capacity(0))
+      compress();
+  }
+
+  public synchronized void add(@Nonnull final double... values) {
+    for (final double value : values) {
+      add(value);
+    }
+  }
+
+  @Nonnull
+  public QuantileSketch merge(@Nonnull final QuantileSketch other) {
+    if (this == other)
+      throw new IllegalArgumentException();
+    // Snapshot outside our own lock so two sketches merging into each other cannot deadlock
+    final QuantileSketch snapshot = other.copy();
+    synchronized (this) {
+      count += snapshot.count;
+      min = Math.min(min, snapshot.min);
+      max = Math.max(max, snapshot.max);
+      for (int h = 0; h < snapshot.levels.length; h++) {
+        for (int i = 0; i < snapshot.sizes[h]; i++) {
+          append(h, snapshot.levels[h][i]);
+        }
+      }
+      sortedValues = null;
+      compress();
+    }
+    return this;
+  }
+
+  @Nonnull
+  public synchronized QuantileSketch copy() {
+    QuantileSketch copy = new QuantileSketch(k);
+    copy.levels = new double[levels.length][];
+    for (int h = 0; h < levels.length; h++) {
+      copy.levels[h] = levels[h].clone();
+    }
+    copy.sizes = sizes.clone();
+    copy.count = count;
+    copy.min = min;
+    copy.max = max;
+    return copy;
+  }
+
+  public synchronized void clear() {
+    levels = new double[][]{new double[8]};
+    sizes = new int[1];
+    count = 0;
+    min = Double.POSITIVE_INFINITY;
+    max = Double.NEGATIVE_INFINITY;
+    sortedValues = null;
+  }
+
+  public synchronized double getQuantile(final double quantile) {
+    if (0 == count)
+      return Double.NaN;
+    if (quantile <= 0)
+      return min;
+    if (quantile >= 1)
+      return max;
+    sort();
+    final double target = quantile * count;
+    long cumulative = 0;
+    for (int i = 0; i < sortedValues.length; i++) {
+      cumulative += sortedWeights[i];
+      if (cumulative > target)
+        return sortedValues[i];
+    }
+    return max;
+  }
+
+  @Nonnull
+  public synchronized double[] getQuantiles(@Nonnull final double... quantiles) {
+    final double[] result = new double[quantiles.length];
+    for (int i = 0; i < quantiles.length; i++) {
+      result[i] = getQuantile(quantiles[i]);
+    }
+    return result;
+  }
+
+  public synchronized double getRank(final double value) {
+    if (0 == count)
+      return Double.NaN;
+    sort();
+    long cumulative = 0;
+    for (int i = 0; i < sortedValues.length && sortedValues[i] < value; i++) {
+      cumulative += sortedWeights[i];
+    }
+    return (double) cumulative / count;
+  }
+
+  private int capacity(final int level) {
+    final int depth = levels.length - 1 - level;
+    return Math.max(2, (int) Math.ceil(k * Math.pow(DECAY, depth)));
+  }
+
+  private void append(final int level, final double value) {
+    while (level >= levels.length) {
+      levels = Arrays.copyOf(levels, levels.length + 1);
+      levels[levels.length - 1] = new double[8];
+      sizes = Arrays.copyOf(sizes, sizes.length + 1);
+    }
+    if (sizes[level] == levels[level].length) {
+      levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+    }
+    levels[level][sizes[level]++] = value;
+  }
+
+  private void compress() {
+    for (int h = 0; h < levels.length; h++) {
+      if (sizes[h] >= capacity(h)) {
+        compact(h);
+      }
+    }
+  }
+
+  private void compact(final int level) {
+    final double[] items = levels[level];
+    final int size = sizes[level];
+    Arrays.sort(items, 0, size);
+    random = FastRandom.xorshift(random);
+    // An odd item out stays behind so that total weight is preserved exactly
+    final int keep = size % 2;
+    final int offset = (int) (random & 1);
+    for (int i = keep + offset; i < size; i += 2) {
+      append(level + 1, items[i]);
+    }
+    sizes[level] = keep;
+  }
+
+  private void sort() {
+    if (null != sortedValues)
+      return;
+    double[] values = new double[]{};
+    long[] weights = new long[]{};
+    for (int h = 0; h < levels.length; h++) {
+      final double[] level = Arrays.copyOf(levels[h], sizes[h]);
+      Arrays.sort(level);
+      final long weight = 1L << h;
+      final double[] mergedValues = new double[values.length + level.length];
+      final long[] mergedWeights = new long[mergedValues.length];
+      int a = 0;
+      int b = 0;
+      for (int j = 0; j < mergedValues.length; j++) {
+        if (b >= level.length || (a < values.length && values[a] <= level[b])) {
+          mergedValues[j] = values[a];
+          mergedWeights[j] = weights[a++];
+        } else {
+          mergedValues[j] = level[b++];
+          mergedWeights[j] = weight;
+        }
+      }
+      values = mergedValues;
+      weights = mergedWeights;
+    }
+    sortedValues = values;
+    sortedWeights = weights;
+  }
+}
@@ -31,7 +31,7 @@ import java.util.Map;
 
 @SuppressWarnings("serial")
 public class ScalarStatistics implements MonitoredItem, Serializable {
-  private static final double zeroTol = 1e-20;
+  static final double zeroTol = 1e-20;
   private volatile double max = -Double.POSITIVE_INFINITY;
   private volatile double min = Double.POSITIVE_INFINITY;
   private volatile int negatives = 0;
@@ -42,6 +42,22 @@ public class ScalarStatistics implements MonitoredItem, Serializable {
   private volatile double sumLog = 0;
   private volatile int zeros = 0;
 
+  public ScalarStatistics() {
+  }
+
+  ScalarStatistics(int sum0, double sum1, double sum2, double min, double max, int negatives, int positives, int zeros,
+                   double sumLog) {
+    this.sum0 = sum0;
+    this.sum1 = sum1;
+    this.sum2 = sum2;
+    this.min = min;
+    this.max = max;
+    this.negatives = negatives;
+    this.positives = positives;
+    this.zeros = zeros;
+    this.sumLog = sumLog;
+  }
+
   public int getCount() {
     return sum0;
   }
@@ -136,7 +152,7 @@ public class ScalarStatistics implements MonitoredItem, Serializable {
     return this;
   }
 
-  public final synchronized void add(final double v) {
+  public synchronized void add(final double v) {
     sum0 += 1;
     sum1 += v;
     sum2 += v * v;
@@ -155,18 +171,14 @@ public class ScalarStatistics implements MonitoredItem, Serializable {
   }
 
   @Nonnull
-  public final synchronized ScalarStatistics add(@Nonnull final ScalarStatistics right) {
+  public final ScalarStatistics add(@Nonnull final ScalarStatistics right) {
     @Nonnull final ScalarStatistics sum = new ScalarStatistics();
-    sum.sum0 += sum0;
-    sum.sum0 += right.sum0;
-    sum.sum1 += sum1;
-    sum.sum1 += right.sum1;
-    sum.sum2 += sum2;
-    sum.sum2 += right.sum2;
+    sum.accumulate(this);
+    sum.accumulate(right);
     return sum;
   }
 
-  public void clear() {
+  public synchronized void clear() {
     min = Double.POSITIVE_INFINITY;
     max = -Double.POSITIVE_INFINITY;
     negatives = 0;
@@ -178,6 +190,27 @@ public class ScalarStatistics implements MonitoredItem, Serializable {
     sumLog = 0;
   }
 
+  void accumulate(@Nonnull final ScalarStatistics right) {
+    // Read the other side under its own lock first; holding both would deadlock against a reverse accumulate
+    @Nonnull final ScalarStatistics snapshot = right.snapshot();
+    synchronized (this) {
+      sum0 += snapshot.sum0;
+      sum1 += snapshot.sum1;
+      sum2 += snapshot.sum2;
+      min = Math.min(min, snapshot.min);
+      max = Math.max(max, snapshot.max);
+      negatives += snapshot.negatives;
+      positives += snapshot.positives;
+      zeros += snapshot.zeros;
+      sumLog += snapshot.sumLog;
+    }
+  }
+
+  @Nonnull
+  synchronized ScalarStatistics snapshot() {
+    return new ScalarStatistics(sum0, sum1, sum2, min, max, negatives, positives, zeros, sumLog);
+  }
+
   public void readJson(@Nullable final JsonObject json) {
     if (null == json)
       return;
@@ -193,15 +226,13 @@ public class ScalarStatistics implements MonitoredItem, Serializable {
   }
 
   @Nonnull
-  public final synchronized ScalarStatistics subtract(@Nonnull final ScalarStatistics right) {
-    @Nonnull final ScalarStatistics sum = new ScalarStatistics();
-    sum.sum0 += sum0;
-    sum.sum0 -= right.sum0;
-    sum.sum1 += sum1;
-    sum.sum1 -= right.sum1;
-    sum.sum2 += sum2;
-    sum.sum2 -= right.sum2;
-    return sum;
+  public final ScalarStatistics subtract(@Nonnull final ScalarStatistics right) {
+    @Nonnull final ScalarStatistics left = snapshot();
+    @Nonnull final ScalarStatistics other = right.snapshot();
+    // The extremes of a difference cannot be recovered from the two sides
+    return new ScalarStatistics(left.sum0 - other.sum0, left.sum1 - other.sum1, left.sum2 - other.sum2, Double.NaN,
+        Double.NaN, left.negatives - other.negatives, left.positives - other.positives, left.zeros - other.zeros,
+        left.sumLog - other.sumLog);
   }
 
   @Override
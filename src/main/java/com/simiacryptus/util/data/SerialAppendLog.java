@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+public class SerialAppendLog<U> implements Closeable {
+  @Nonnull
+  private final SerialType<U> factory;
+  @Nonnull
+  private final SerialArrayList<U> list;
+  @Nonnull
+  private final FileChannel channel;
+  private final int unitSize;
+
+  public SerialAppendLog(@Nonnull SerialType<U> factory, @Nonnull File file) throws IOException {
+    this.factory = factory;
+    this.unitSize = factory.getSize();
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    SerialFileHeader header = new SerialFileHeader(factory);
+    if (channel.size() < header.getSize()) {
+      channel.truncate(0);
+      header.write(channel);
+      channel.force(true);
+    } else {
+      SerialFileHeader.read(channel).verify(factory);
+    }
+    // Anything past the last complete record is a torn write from a crash
+    int records = (int) ((channel.size() - header.getSize()) / unitSize);
+    long end = header.getSize() + (long) records * unitSize;
+    if (channel.size() > end) {
+      channel.truncate(end);
+      channel.force(true);
+    }
+    this.list = new SerialArrayList<>(factory, records);
+    if (0 < records)
+      list.readFrom(channel, header.getSize(), records * unitSize);
+    channel.position(end);
+  }
+
+  @Nonnull
+  public SerialArrayList<U> getList() {
+    return list;
+  }
+
+  public int length() {
+    return list.length();
+  }
+
+  @Nonnull
+  public U get(int i) {
+    return list.get(i);
+  }
+
+  public synchronized int add(U value) throws IOException {
+    byte[] record = factory.write(value);
+    long end = channel.position();
+    try {
+      ByteBuffer data = ByteBuffer.wrap(record);
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+      int index = list.length();
+      list.setBytes(index, record);
+      return index;
+    } catch (Throwable e) {
+      rollback(end, e);
+      throw e;
+    }
+  }
+
+  public synchronized int addAll(@Nonnull Collection<U> values) throws IOException {
+    int startIndex = list.length();
+    SerialArrayList<U> batch = new SerialArrayList<>(factory, values);
+    long end = channel.position();
+    try {
+      batch.writeTo(channel, 0, batch.length());
+      list.putAll(batch, startIndex);
+      return startIndex;
+    } catch (Throwable e) {
+      rollback(end, e);
+      throw e;
+    }
+  }
+
+  // A partial write would leave the file out of step with the list, so cut it back to the last complete record
+  private void rollback(long end, @Nonnull Throwable cause) {
+    try {
+      channel.truncate(end);
+      channel.position(end);
+    } catch (Throwable e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  public void sync() throws IOException {
+    channel.force(false);
+  }
+
+  public void snapshot(@Nonnull File file) throws IOException {
+    list.save(file);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      sync();
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return String.format("SerialAppendLog{records=%s, bytes=%s}", list.length(), channel.size());
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+}
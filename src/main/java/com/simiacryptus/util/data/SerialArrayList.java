@@ -25,11 +25,25 @@ import com.simiacryptus.util.Util;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Spliterator;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SerialArrayList<U> {
   public final int unitSize;
@@ -37,6 +51,8 @@ public class SerialArrayList<U> {
   private final SerialType<U> factory;
   private byte[] buffer;
   private int maxByte = 0;
+  @Nonnull
+  private volatile SerialIndex[] indexes = new SerialIndex[]{};
 
   public SerialArrayList(@Nonnull SerialType<U> factory, @Nonnull SerialArrayList<U>... items) {
     this.factory = factory;
@@ -79,6 +95,25 @@ public class SerialArrayList<U> {
     this.buffer = new byte[this.unitSize * size];
   }
 
+  @Nonnull
+  public static <U> SerialArrayList<U> load(@Nonnull SerialType<U> factory, @Nonnull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      SerialFileHeader header = SerialFileHeader.read(channel);
+      header.verify(factory);
+      long bytes = channel.size() - header.getSize();
+      if (0 != bytes % header.unitSize)
+        throw new IOException(String.format("Truncated record in %s", file));
+      SerialArrayList<U> list = new SerialArrayList<>(factory, (int) (bytes / header.unitSize));
+      list.readFrom(channel, header.getSize(), (int) bytes);
+      return list;
+    }
+  }
+
+  @Nonnull
+  public SerialType<U> getFactory() {
+    return factory;
+  }
+
   public int getMemorySize() {
     return buffer.length;
   }
@@ -91,6 +126,9 @@ public class SerialArrayList<U> {
   public synchronized void clear() {
     buffer = new byte[]{};
     maxByte = 0;
+    for (SerialIndex index : indexes) {
+      index.clear();
+    }
   }
 
   public int length() {
@@ -120,13 +158,148 @@ public class SerialArrayList<U> {
   }
 
   public void set(int i, U value) {
-    ensureCapacity((i + 1) * unitSize);
-    ByteBuffer view = getView(i);
-    try {
-      factory.write(view, value);
-    } catch (IOException e) {
-      throw Util.throwException(e);
+    if (0 < indexes.length) {
+      synchronized (this) {
+        int length = length();
+        unindex(i, Math.min(i + 1, length), null);
+        write(i, value);
+        reindex(Math.min(i, length), i + 1, null);
+      }
+    } else {
+      write(i, value);
+    }
+  }
+
+  @Nonnull
+  public synchronized <I extends SerialIndex> I addIndex(@Nonnull I index) {
+    ByteBuffer view = ByteBuffer.wrap(buffer);
+    int length = length();
+    for (int i = 0; i < length; i++) {
+      index.insert(i, view, i * unitSize);
     }
+    SerialIndex[] indexes = Arrays.copyOf(this.indexes, this.indexes.length + 1);
+    indexes[indexes.length - 1] = index;
+    this.indexes = indexes;
+    return index;
+  }
+
+  public synchronized boolean removeIndex(@Nonnull SerialIndex index) {
+    int before = indexes.length;
+    indexes = Arrays.stream(indexes).filter(x -> x != index).toArray(i -> new SerialIndex[i]);
+    return indexes.length < before;
+  }
+
+  @Nonnull
+  public SerialHashIndex hashIndex(@Nonnull SerialField field) {
+    return addIndex(new SerialHashIndex(field, length()));
+  }
+
+  @Nonnull
+  public SerialSortedIndex sortedIndex(@Nonnull SerialField field) {
+    return addIndex(new SerialSortedIndex(field));
+  }
+
+  @Nonnull
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Nonnull
+  public Cursor cursor(int i) {
+    return new Cursor().at(i);
+  }
+
+  public void forEach(@Nonnull Consumer<Cursor> consumer) {
+    Cursor cursor = new Cursor();
+    int length = length();
+    for (int i = 0; i < length; i++) {
+      consumer.accept(cursor.at(i));
+    }
+  }
+
+  @Nonnull
+  public int[] filter(@Nonnull Predicate<Cursor> predicate) {
+    Cursor cursor = new Cursor();
+    int length = length();
+    int[] found = new int[16];
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      if (predicate.test(cursor.at(i))) {
+        if (count == found.length)
+          found = RefArrays.copyOf(found, found.length * 2);
+        found[count++] = i;
+      }
+    }
+    return RefArrays.copyOf(found, count);
+  }
+
+  public void setBytes(int i, @Nonnull byte[] record) {
+    assert record.length == unitSize;
+    if (0 < indexes.length) {
+      synchronized (this) {
+        int length = length();
+        unindex(i, Math.min(i + 1, length), null);
+        ensureCapacity((i + 1) * unitSize);
+        RefSystem.arraycopy(record, 0, buffer, i * unitSize, unitSize);
+        reindex(Math.min(i, length), i + 1, null);
+      }
+    } else {
+      ensureCapacity((i + 1) * unitSize);
+      RefSystem.arraycopy(record, 0, buffer, i * unitSize, unitSize);
+    }
+  }
+
+  public synchronized void save(@Nonnull File file) throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      new SerialFileHeader(factory).write(channel);
+      writeTo(channel, 0, length());
+      channel.force(true);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Nonnull
+  public SerialColumnList<U> toColumns() {
+    return new SerialColumnList<>(this);
+  }
+
+  @Nonnull
+  public Spliterator<U> spliterator() {
+    return new RecordSpliterator(0, length());
+  }
+
+  @Nonnull
+  public Stream<U> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  @Nonnull
+  public Stream<U> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  @Nonnull
+  public IntStream intStream(@Nonnull SerialField field) {
+    if (!field.isIntegral() || field.getSize() > 4)
+      throw new IllegalArgumentException(field.toString());
+    ByteBuffer view = snapshot();
+    return IntStream.range(0, view.limit() / unitSize).map(i -> (int) field.getAsLong(view, i * unitSize));
+  }
+
+  @Nonnull
+  public LongStream longStream(@Nonnull SerialField field) {
+    if (!field.isIntegral())
+      throw new IllegalArgumentException(field.toString());
+    ByteBuffer view = snapshot();
+    return IntStream.range(0, view.limit() / unitSize).mapToLong(i -> field.getAsLong(view, i * unitSize));
+  }
+
+  @Nonnull
+  public DoubleStream doubleStream(@Nonnull SerialField field) {
+    ByteBuffer view = snapshot();
+    return IntStream.range(0, view.limit() / unitSize).mapToDouble(i -> field.getAsDouble(view, i * unitSize));
   }
 
   public synchronized int addAll(@Nullable Collection<U> data) {
@@ -140,8 +313,12 @@ public class SerialArrayList<U> {
   }
 
   public synchronized void putAll(@Nonnull SerialArrayList<U> data, int startIndex) {
+    int length = length();
+    int endIndex = startIndex + data.length();
+    unindex(startIndex, Math.min(endIndex, length), null);
     ensureCapacity(startIndex * unitSize + data.maxByte);
     RefSystem.arraycopy(data.buffer, 0, this.buffer, startIndex * unitSize, data.maxByte);
+    reindex(Math.min(startIndex, length), endIndex, null);
   }
 
   @Nonnull
@@ -176,6 +353,66 @@ public class SerialArrayList<U> {
     return result;
   }
 
+  synchronized void readFrom(@Nonnull FileChannel channel, long position, int bytes) throws IOException {
+    ensureCapacity(bytes);
+    SerialFileHeader.readFully(channel, ByteBuffer.wrap(buffer, 0, bytes), position);
+  }
+
+  synchronized void writeTo(@Nonnull FileChannel channel, int from, int to) throws IOException {
+    ByteBuffer data = ByteBuffer.wrap(buffer, from * unitSize, (to - from) * unitSize);
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
+  private void write(int i, U value) {
+    ensureCapacity((i + 1) * unitSize);
+    ByteBuffer view = getView(i);
+    try {
+      factory.write(view, value);
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+
+  private void unindex(int from, int to, @Nullable SerialField field) {
+    SerialIndex[] indexes = this.indexes;
+    if (0 == indexes.length || from >= to)
+      return;
+    ByteBuffer view = ByteBuffer.wrap(buffer);
+    for (SerialIndex index : indexes) {
+      if (null != field && !overlaps(index.getField(), field))
+        continue;
+      for (int i = from; i < to; i++) {
+        index.remove(i, view, i * unitSize);
+      }
+    }
+  }
+
+  private void reindex(int from, int to, @Nullable SerialField field) {
+    SerialIndex[] indexes = this.indexes;
+    if (0 == indexes.length || from >= to)
+      return;
+    ByteBuffer view = ByteBuffer.wrap(buffer);
+    for (SerialIndex index : indexes) {
+      if (null != field && !overlaps(index.getField(), field))
+        continue;
+      for (int i = from; i < to; i++) {
+        index.insert(i, view, i * unitSize);
+      }
+    }
+  }
+
+  // The length and the array it indexes are read together, since growth replaces the array after raising the length
+  @Nonnull
+  private synchronized ByteBuffer snapshot() {
+    return ByteBuffer.wrap(buffer, 0, length() * unitSize);
+  }
+
+  private static boolean overlaps(@Nonnull SerialField a, @Nonnull SerialField b) {
+    return a.offset < b.offset + b.getSize() && b.offset < a.offset + a.getSize();
+  }
+
   @Nonnull
   private ByteBuffer getView(int i) {
     ByteBuffer duplicate = ByteBuffer.wrap(buffer);
@@ -194,4 +431,199 @@ public class SerialArrayList<U> {
       buffer = RefArrays.copyOf(buffer, targetBytes);
     }
   }
+
+  private final class RecordSpliterator implements Spliterator<U> {
+    private final int fence;
+    private int index;
+
+    private RecordSpliterator(int origin, int fence) {
+      this.index = origin;
+      this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(@Nonnull Consumer<? super U> action) {
+      if (index >= fence)
+        return false;
+      action.accept(get(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(@Nonnull Consumer<? super U> action) {
+      final int fence = this.fence;
+      for (int i = index; i < fence; i++) {
+        action.accept(get(i));
+      }
+      index = fence;
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<U> trySplit() {
+      int mid = (index + fence) >>> 1;
+      if (mid <= index)
+        return null;
+      RecordSpliterator prefix = new RecordSpliterator(index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+    }
+  }
+
+  public final class Cursor {
+    private int index = -1;
+    private int offset = 0;
+    @Nullable
+    private ByteBuffer view = null;
+
+    private Cursor() {
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    @Nonnull
+    public Cursor at(int i) {
+      if (i < 0 || i >= length())
+        throw new IndexOutOfBoundsException(Integer.toString(i));
+      index = i;
+      offset = i * unitSize;
+      return this;
+    }
+
+    public byte getByte(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.BYTE;
+      return getView().get(offset + field.offset);
+    }
+
+    public short getShort(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.SHORT;
+      return getView().getShort(offset + field.offset);
+    }
+
+    public int getInt(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.INT;
+      return getView().getInt(offset + field.offset);
+    }
+
+    public long getLong(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.LONG;
+      return getView().getLong(offset + field.offset);
+    }
+
+    public float getFloat(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.FLOAT;
+      return getView().getFloat(offset + field.offset);
+    }
+
+    public double getDouble(@Nonnull SerialField field) {
+      assert field.type == SerialField.Type.DOUBLE;
+      return getView().getDouble(offset + field.offset);
+    }
+
+    public long getAsLong(@Nonnull SerialField field) {
+      return field.getAsLong(getView(), offset);
+    }
+
+    public double getAsDouble(@Nonnull SerialField field) {
+      return field.getAsDouble(getView(), offset);
+    }
+
+    @Nonnull
+    public Cursor setByte(@Nonnull SerialField field, byte value) {
+      assert field.type == SerialField.Type.BYTE;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().put(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public Cursor setShort(@Nonnull SerialField field, short value) {
+      assert field.type == SerialField.Type.SHORT;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().putShort(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public Cursor setInt(@Nonnull SerialField field, int value) {
+      assert field.type == SerialField.Type.INT;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().putInt(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public Cursor setLong(@Nonnull SerialField field, long value) {
+      assert field.type == SerialField.Type.LONG;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().putLong(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public Cursor setFloat(@Nonnull SerialField field, float value) {
+      assert field.type == SerialField.Type.FLOAT;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().putFloat(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public Cursor setDouble(@Nonnull SerialField field, double value) {
+      assert field.type == SerialField.Type.DOUBLE;
+      synchronized (SerialArrayList.this) {
+        unindex(index, index + 1, field);
+        getView().putDouble(offset + field.offset, value);
+        reindex(index, index + 1, field);
+      }
+      return this;
+    }
+
+    @Nonnull
+    public U get() {
+      return SerialArrayList.this.get(index);
+    }
+
+    public void set(U value) {
+      SerialArrayList.this.set(index, value);
+    }
+
+    @Nonnull
+    private ByteBuffer getView() {
+      if (index < 0)
+        throw new IllegalStateException("Cursor is not positioned");
+      // The backing array is replaced when the list grows
+      final byte[] buffer = SerialArrayList.this.buffer;
+      if (null == view || view.array() != buffer)
+        view = ByteBuffer.wrap(buffer);
+      return view;
+    }
+  }
 }
@@ -0,0 +1,656 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+
+public abstract class SerialColumn {
+  @Nonnull
+  public final SerialField field;
+  protected int size = 0;
+
+  protected SerialColumn(@Nonnull SerialField field) {
+    this.field = field;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Nonnull
+  public static SerialColumn create(@Nonnull SerialField field, int capacity) {
+    switch (field.type) {
+      case BYTE:
+        return new ByteColumn(field, capacity);
+      case SHORT:
+        return new ShortColumn(field, capacity);
+      case INT:
+        return new IntColumn(field, capacity);
+      case LONG:
+        return new LongColumn(field, capacity);
+      case FLOAT:
+        return new FloatColumn(field, capacity);
+      case DOUBLE:
+        return new DoubleColumn(field, capacity);
+      default:
+        throw new IllegalArgumentException(field.toString());
+    }
+  }
+
+  public abstract int capacity();
+
+  public abstract double getAsDouble(int i);
+
+  public abstract long getAsLong(int i);
+
+  public abstract void setAsDouble(int i, double value);
+
+  public abstract void setAsLong(int i, long value);
+
+  public abstract double sum();
+
+  public abstract double min();
+
+  public abstract double max();
+
+  @Nonnull
+  public abstract int[] filter(double min, double max);
+
+  public double mean() {
+    return sum() / size;
+  }
+
+  protected abstract void resize(int capacity);
+
+  void ensureSize(int size) {
+    int capacity = capacity();
+    if (capacity < size) {
+      while (capacity < size)
+        capacity = Math.max(capacity * 2, 16);
+      resize(capacity);
+    }
+    this.size = Math.max(this.size, size);
+  }
+
+  abstract void clear();
+
+  protected final int checkIndex(int i) {
+    if (i < 0 || i >= size)
+      throw new IndexOutOfBoundsException(Integer.toString(i));
+    return i;
+  }
+
+  void read(@Nonnull ByteBuffer record, int recordOffset, int i) {
+    if (field.isIntegral()) {
+      setAsLong(i, field.getAsLong(record, recordOffset));
+    } else {
+      setAsDouble(i, field.getAsDouble(record, recordOffset));
+    }
+  }
+
+  void write(@Nonnull ByteBuffer record, int recordOffset, int i) {
+    if (field.isIntegral()) {
+      field.setAsLong(record, recordOffset, getAsLong(i));
+    } else {
+      field.setAsDouble(record, recordOffset, getAsDouble(i));
+    }
+  }
+
+  @Nonnull
+  protected static int[] collect(@Nonnull boolean[] mask, int count) {
+    int[] found = new int[count];
+    int j = 0;
+    for (int i = 0; j < count; i++) {
+      if (mask[i])
+        found[j++] = i;
+    }
+    return found;
+  }
+
+  // Owns the primitive array behind a column, so growth and zeroing are shared by every element type
+  public abstract static class ArrayColumn<A> extends SerialColumn {
+    @Nonnull
+    protected A data;
+
+    protected ArrayColumn(@Nonnull SerialField field, @Nonnull A data) {
+      super(field);
+      this.data = data;
+    }
+
+    @Nonnull
+    public A getData() {
+      return data;
+    }
+
+    @Override
+    public int capacity() {
+      return Array.getLength(data);
+    }
+
+    @Override
+    protected void resize(int capacity) {
+      final A grown = newArray(capacity);
+      System.arraycopy(data, 0, grown, 0, Math.min(size, capacity));
+      data = grown;
+    }
+
+    @Override
+    void clear() {
+      // A later sparse set() grows size over these slots, so they must not keep values from before the clear
+      data = newArray(capacity());
+      size = 0;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private A newArray(int capacity) {
+      return (A) Array.newInstance(data.getClass().getComponentType(), capacity);
+    }
+  }
+
+  public static class ByteColumn extends ArrayColumn<byte[]> {
+    public ByteColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new byte[capacity]);
+    }
+
+    public byte get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, byte value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = (byte) value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = (byte) value;
+    }
+
+    @Override
+    public double sum() {
+      final byte[] data = this.data;
+      long sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += data[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public double min() {
+      final byte[] data = this.data;
+      int min = Byte.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final byte[] data = this.data;
+      int max = Byte.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final byte[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+
+  public static class ShortColumn extends ArrayColumn<short[]> {
+    public ShortColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new short[capacity]);
+    }
+
+    public short get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, short value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = (short) value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = (short) value;
+    }
+
+    @Override
+    public double sum() {
+      final short[] data = this.data;
+      long sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += data[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public double min() {
+      final short[] data = this.data;
+      int min = Short.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final short[] data = this.data;
+      int max = Short.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final short[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+
+  public static class IntColumn extends ArrayColumn<int[]> {
+    public IntColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new int[capacity]);
+    }
+
+    public int get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, int value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = (int) value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = (int) value;
+    }
+
+    @Override
+    public double sum() {
+      final int[] data = this.data;
+      long sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += data[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public double min() {
+      final int[] data = this.data;
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final int[] data = this.data;
+      int max = Integer.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final int[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+
+  public static class LongColumn extends ArrayColumn<long[]> {
+    public LongColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new long[capacity]);
+    }
+
+    public long get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, long value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = (long) value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double sum() {
+      return sumAsLong();
+    }
+
+    public long sumAsLong() {
+      final long[] data = this.data;
+      long sum = 0;
+      for (int i = 0; i < size; i++) {
+        sum += data[i];
+      }
+      return sum;
+    }
+
+    @Override
+    public double min() {
+      final long[] data = this.data;
+      long min = Long.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final long[] data = this.data;
+      long max = Long.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final long[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+
+  public static class FloatColumn extends ArrayColumn<float[]> {
+    public FloatColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new float[capacity]);
+    }
+
+    public float get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, float value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return (long) data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = (float) value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double sum() {
+      final float[] data = this.data;
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      int i = 0;
+      for (; i + 3 < size; i += 4) {
+        s0 += data[i];
+        s1 += data[i + 1];
+        s2 += data[i + 2];
+        s3 += data[i + 3];
+      }
+      for (; i < size; i++) {
+        s0 += data[i];
+      }
+      return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double min() {
+      final float[] data = this.data;
+      float min = Float.POSITIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final float[] data = this.data;
+      float max = Float.NEGATIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final float[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+
+  public static class DoubleColumn extends ArrayColumn<double[]> {
+    public DoubleColumn(@Nonnull SerialField field, int capacity) {
+      super(field, new double[capacity]);
+    }
+
+    public double get(int i) {
+      return data[checkIndex(i)];
+    }
+
+    public void set(int i, double value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double getAsDouble(int i) {
+      return data[checkIndex(i)];
+    }
+
+    @Override
+    public long getAsLong(int i) {
+      return (long) data[checkIndex(i)];
+    }
+
+    @Override
+    public void setAsDouble(int i, double value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public void setAsLong(int i, long value) {
+      data[checkIndex(i)] = value;
+    }
+
+    @Override
+    public double sum() {
+      final double[] data = this.data;
+      // Independent accumulators break the add dependency chain
+      double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+      int i = 0;
+      for (; i + 3 < size; i += 4) {
+        s0 += data[i];
+        s1 += data[i + 1];
+        s2 += data[i + 2];
+        s3 += data[i + 3];
+      }
+      for (; i < size; i++) {
+        s0 += data[i];
+      }
+      return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double min() {
+      final double[] data = this.data;
+      double min = Double.POSITIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, data[i]);
+      }
+      return 0 == size ? Double.NaN : min;
+    }
+
+    @Override
+    public double max() {
+      final double[] data = this.data;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        max = Math.max(max, data[i]);
+      }
+      return 0 == size ? Double.NaN : max;
+    }
+
+    @Nonnull
+    @Override
+    public int[] filter(double min, double max) {
+      final double[] data = this.data;
+      boolean[] mask = new boolean[size];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        boolean match = data[i] >= min & data[i] <= max;
+        mask[i] = match;
+        count += match ? 1 : 0;
+      }
+      return collect(mask, count);
+    }
+  }
+}
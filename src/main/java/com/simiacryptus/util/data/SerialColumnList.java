@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+public class SerialColumnList<U> {
+  public final int unitSize;
+  @Nonnull
+  private final SerialType<U> factory;
+  @Nonnull
+  private final SerialColumn[] columns;
+  private int length = 0;
+
+  public SerialColumnList(@Nonnull SerialType<U> factory) {
+    this(factory, 16);
+  }
+
+  public SerialColumnList(@Nonnull SerialType<U> factory, int capacity) {
+    this.factory = factory;
+    this.unitSize = factory.getSize();
+    SerialField[] fields = factory.getFields();
+    int covered = 0;
+    for (SerialField field : fields) {
+      covered += field.getSize();
+    }
+    if (covered != unitSize)
+      throw new IllegalArgumentException(String.format("Fields cover %s of %s bytes", covered, unitSize));
+    this.columns = new SerialColumn[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      columns[i] = SerialColumn.create(fields[i], capacity);
+    }
+  }
+
+  public SerialColumnList(@Nonnull SerialType<U> factory, @Nonnull Collection<U> items) {
+    this(factory, items.size());
+    items.forEach(this::add);
+  }
+
+  public SerialColumnList(@Nonnull SerialArrayList<U> rows) {
+    this(rows.getFactory(), rows.length());
+    rows.forEach(cursor -> {
+      int i = cursor.getIndex();
+      for (SerialColumn column : columns) {
+        column.ensureSize(i + 1);
+        if (column.field.isIntegral()) {
+          column.setAsLong(i, cursor.getAsLong(column.field));
+        } else {
+          column.setAsDouble(i, cursor.getAsDouble(column.field));
+        }
+      }
+    });
+    length = rows.length();
+  }
+
+  @Nonnull
+  public SerialType<U> getFactory() {
+    return factory;
+  }
+
+  public int getMemorySize() {
+    int bytes = 0;
+    for (SerialColumn column : columns) {
+      bytes += column.capacity() * column.field.getSize();
+    }
+    return bytes;
+  }
+
+  public int length() {
+    return length;
+  }
+
+  @Nonnull
+  public SerialColumn getColumn(@Nonnull SerialField field) {
+    for (SerialColumn column : columns) {
+      if (column.field == field)
+        return column;
+    }
+    return getColumn(field.name);
+  }
+
+  @Nonnull
+  public SerialColumn getColumn(@Nonnull String name) {
+    for (SerialColumn column : columns) {
+      if (column.field.name.equals(name))
+        return column;
+    }
+    throw new IllegalArgumentException(name);
+  }
+
+  @Nonnull
+  public SerialColumn[] getColumns() {
+    return columns.clone();
+  }
+
+  @Nonnull
+  public U get(int i) {
+    if (i < 0 || i >= length)
+      throw new IndexOutOfBoundsException(Integer.toString(i));
+    ByteBuffer record = ByteBuffer.allocate(unitSize);
+    for (SerialColumn column : columns) {
+      column.write(record, 0, i);
+    }
+    try {
+      return factory.read(record);
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+  }
+
+  public synchronized int add(U value) {
+    int index = length;
+    set(index, value);
+    return index;
+  }
+
+  public synchronized void set(int i, U value) {
+    ByteBuffer record = ByteBuffer.allocate(unitSize);
+    try {
+      factory.write(record, value);
+    } catch (IOException e) {
+      throw Util.throwException(e);
+    }
+    for (SerialColumn column : columns) {
+      column.ensureSize(i + 1);
+      column.read(record, 0, i);
+    }
+    length = Math.max(length, i + 1);
+  }
+
+  public synchronized void clear() {
+    for (SerialColumn column : columns) {
+      column.clear();
+    }
+    length = 0;
+  }
+
+  public double sum(@Nonnull SerialField field) {
+    return getColumn(field).sum();
+  }
+
+  public double min(@Nonnull SerialField field) {
+    return getColumn(field).min();
+  }
+
+  public double max(@Nonnull SerialField field) {
+    return getColumn(field).max();
+  }
+
+  public double mean(@Nonnull SerialField field) {
+    return getColumn(field).mean();
+  }
+
+  @Nonnull
+  public int[] filter(@Nonnull SerialField field, double min, double max) {
+    return getColumn(field).filter(min, max);
+  }
+
+  @Nonnull
+  public SerialArrayList<U> toRows() {
+    SerialArrayList<U> rows = new SerialArrayList<>(factory, length);
+    byte[] bytes = new byte[unitSize];
+    ByteBuffer record = ByteBuffer.wrap(bytes);
+    for (int i = 0; i < length; i++) {
+      for (SerialColumn column : columns) {
+        column.write(record, 0, i);
+      }
+      rows.setBytes(i, bytes);
+    }
+    return rows;
+  }
+}
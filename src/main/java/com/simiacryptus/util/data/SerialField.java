@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SerialField {
+  @Nonnull
+  public final String name;
+  @Nonnull
+  public final Type type;
+  public final int offset;
+
+  public SerialField(@Nonnull String name, @Nonnull Type type, int offset) {
+    this.name = name;
+    this.type = type;
+    this.offset = offset;
+  }
+
+  public int getSize() {
+    return type.size;
+  }
+
+  public boolean isIntegral() {
+    return type != Type.FLOAT && type != Type.DOUBLE;
+  }
+
+  public long getAsLong(@Nonnull ByteBuffer buffer, int recordOffset) {
+    int position = recordOffset + offset;
+    switch (type) {
+      case BYTE:
+        return buffer.get(position);
+      case SHORT:
+        return buffer.getShort(position);
+      case INT:
+        return buffer.getInt(position);
+      case LONG:
+        return buffer.getLong(position);
+      case FLOAT:
+        return (long) buffer.getFloat(position);
+      case DOUBLE:
+        return (long) buffer.getDouble(position);
+      default:
+        throw new IllegalStateException(type.toString());
+    }
+  }
+
+  public double getAsDouble(@Nonnull ByteBuffer buffer, int recordOffset) {
+    int position = recordOffset + offset;
+    switch (type) {
+      case FLOAT:
+        return buffer.getFloat(position);
+      case DOUBLE:
+        return buffer.getDouble(position);
+      default:
+        return getAsLong(buffer, recordOffset);
+    }
+  }
+
+  public void setAsLong(@Nonnull ByteBuffer buffer, int recordOffset, long value) {
+    int position = recordOffset + offset;
+    switch (type) {
+      case BYTE:
+        buffer.put(position, (byte) value);
+        break;
+      case SHORT:
+        buffer.putShort(position, (short) value);
+        break;
+      case INT:
+        buffer.putInt(position, (int) value);
+        break;
+      case LONG:
+        buffer.putLong(position, value);
+        break;
+      default:
+        setAsDouble(buffer, recordOffset, value);
+    }
+  }
+
+  public void setAsDouble(@Nonnull ByteBuffer buffer, int recordOffset, double value) {
+    int position = recordOffset + offset;
+    switch (type) {
+      case FLOAT:
+        buffer.putFloat(position, (float) value);
+        break;
+      case DOUBLE:
+        buffer.putDouble(position, value);
+        break;
+      default:
+        setAsLong(buffer, recordOffset, (long) value);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + type + "@" + offset;
+  }
+
+  public enum Type {
+    BYTE(1), SHORT(2), INT(4), LONG(8), FLOAT(4), DOUBLE(8);
+
+    public final int size;
+
+    Type(int size) {
+      this.size = size;
+    }
+  }
+
+  public static class Layout {
+    private final List<SerialField> fields = new ArrayList<>();
+    private int size = 0;
+
+    public int getSize() {
+      return size;
+    }
+
+    @Nonnull
+    public Layout add(@Nonnull String name, @Nonnull Type type) {
+      fields.add(new SerialField(name, type, size));
+      size += type.size;
+      return this;
+    }
+
+    @Nonnull
+    public Layout skip(int bytes) {
+      size += bytes;
+      return this;
+    }
+
+    @Nonnull
+    public SerialField[] toArray() {
+      return fields.toArray(new SerialField[]{});
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+final class SerialFileHeader {
+  static final int MAGIC = 0x53414c31;
+  final int unitSize;
+  @Nonnull
+  final String typeId;
+
+  SerialFileHeader(int unitSize, @Nonnull String typeId) {
+    this.unitSize = unitSize;
+    this.typeId = typeId;
+  }
+
+  SerialFileHeader(@Nonnull SerialType<?> factory) {
+    this(factory.getSize(), factory.getTypeId());
+  }
+
+  int getSize() {
+    return 10 + typeId.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  void write(@Nonnull FileChannel channel) throws IOException {
+    byte[] id = typeId.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer header = ByteBuffer.allocate(10 + id.length);
+    header.putInt(MAGIC);
+    header.putInt(unitSize);
+    header.putShort((short) id.length);
+    header.put(id);
+    header.flip();
+    channel.position(0);
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+  }
+
+  @Nonnull
+  static SerialFileHeader read(@Nonnull FileChannel channel) throws IOException {
+    ByteBuffer prefix = ByteBuffer.allocate(10);
+    readFully(channel, prefix, 0);
+    if (prefix.getInt() != MAGIC)
+      throw new IOException("Not a serial array file");
+    int unitSize = prefix.getInt();
+    ByteBuffer id = ByteBuffer.allocate(prefix.getShort() & 0xFFFF);
+    readFully(channel, id, 10);
+    return new SerialFileHeader(unitSize, new String(id.array(), StandardCharsets.UTF_8));
+  }
+
+  static void readFully(@Nonnull FileChannel channel, @Nonnull ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0)
+        throw new IOException("Unexpected end of file");
+      position += read;
+    }
+    buffer.flip();
+  }
+
+  void verify(@Nonnull SerialType<?> factory) throws IOException {
+    if (unitSize != factory.getSize())
+      throw new IOException(String.format("Record size %s does not match %s", unitSize, factory.getSize()));
+    if (!typeId.equals(factory.getTypeId()))
+      throw new IOException(String.format("Type %s does not match %s", typeId, factory.getTypeId()));
+  }
+}
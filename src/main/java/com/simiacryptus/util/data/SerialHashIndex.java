@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class SerialHashIndex implements SerialIndex {
+  private static final int EMPTY = -1;
+  private static final int DELETED = -2;
+  @Nonnull
+  private final SerialField field;
+  private long[] keys;
+  private int[] ids;
+  private int size = 0;
+  private int used = 0;
+
+  public SerialHashIndex(@Nonnull SerialField field) {
+    this(field, 16);
+  }
+
+  public SerialHashIndex(@Nonnull SerialField field, int capacity) {
+    this.field = field;
+    int slots = Integer.highestOneBit(Math.max(capacity * 2 - 1, 16)) << 1;
+    this.keys = new long[slots];
+    this.ids = new int[slots];
+    Arrays.fill(ids, EMPTY);
+  }
+
+  @Nonnull
+  @Override
+  public SerialField getField() {
+    return field;
+  }
+
+  @Override
+  public synchronized int size() {
+    return size;
+  }
+
+  @Override
+  public synchronized void insert(int id, @Nonnull ByteBuffer buffer, int recordOffset) {
+    put(key(buffer, recordOffset), id);
+  }
+
+  @Override
+  public synchronized void remove(int id, @Nonnull ByteBuffer buffer, int recordOffset) {
+    long key = key(buffer, recordOffset);
+    int mask = keys.length - 1;
+    for (int slot = hash(key) & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (ids[slot] == id && keys[slot] == key) {
+        ids[slot] = DELETED;
+        size--;
+        return;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void clear() {
+    Arrays.fill(ids, EMPTY);
+    size = 0;
+    used = 0;
+  }
+
+  @Nonnull
+  public int[] lookup(long value) {
+    return find(field.isIntegral() ? value : Double.doubleToLongBits(value));
+  }
+
+  @Nonnull
+  public int[] lookup(double value) {
+    return find(field.isIntegral() ? (long) value : Double.doubleToLongBits(value));
+  }
+
+  private long key(@Nonnull ByteBuffer buffer, int recordOffset) {
+    if (field.isIntegral()) {
+      return field.getAsLong(buffer, recordOffset);
+    } else {
+      return Double.doubleToLongBits(field.getAsDouble(buffer, recordOffset));
+    }
+  }
+
+  @Nonnull
+  private synchronized int[] find(long key) {
+    int[] found = new int[4];
+    int count = 0;
+    int mask = keys.length - 1;
+    for (int slot = hash(key) & mask; ids[slot] != EMPTY; slot = (slot + 1) & mask) {
+      if (ids[slot] >= 0 && keys[slot] == key) {
+        if (count == found.length)
+          found = Arrays.copyOf(found, count * 2);
+        found[count++] = ids[slot];
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  private void put(long key, int id) {
+    if ((used + 1) * 2 > keys.length)
+      rehash(size * 4 > keys.length ? keys.length * 2 : keys.length);
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (ids[slot] >= 0) {
+      slot = (slot + 1) & mask;
+    }
+    if (ids[slot] == EMPTY)
+      used++;
+    keys[slot] = key;
+    ids[slot] = id;
+    size++;
+  }
+
+  private void rehash(int slots) {
+    long[] oldKeys = keys;
+    int[] oldIds = ids;
+    keys = new long[slots];
+    ids = new int[slots];
+    Arrays.fill(ids, EMPTY);
+    size = 0;
+    used = 0;
+    for (int i = 0; i < oldIds.length; i++) {
+      if (oldIds[i] >= 0)
+        put(oldKeys[i], oldIds[i]);
+    }
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+public interface SerialIndex {
+  @Nonnull
+  SerialField getField();
+
+  void insert(int id, @Nonnull ByteBuffer buffer, int recordOffset);
+
+  void remove(int id, @Nonnull ByteBuffer buffer, int recordOffset);
+
+  void clear();
+
+  int size();
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class SerialSortedIndex implements SerialIndex {
+  private static final int MIN_BATCH = 1024;
+  @Nonnull
+  private final SerialField field;
+  private double[] keys = new double[16];
+  private int[] ids = new int[16];
+  private int size = 0;
+  // Inserts and removals are buffered unsorted; queries filter through them and a batched merge folds them in
+  @Nonnull
+  private final Batch inserted = new Batch();
+  @Nonnull
+  private final Batch removed = new Batch();
+
+  public SerialSortedIndex(@Nonnull SerialField field) {
+    this.field = field;
+  }
+
+  @Nonnull
+  @Override
+  public SerialField getField() {
+    return field;
+  }
+
+  @Override
+  public synchronized int size() {
+    return size + inserted.size - removed.size;
+  }
+
+  @Override
+  public synchronized void insert(int id, @Nonnull ByteBuffer buffer, int recordOffset) {
+    inserted.add(field.getAsDouble(buffer, recordOffset), id);
+    mergeIfFull();
+  }
+
+  @Override
+  public synchronized void remove(int id, @Nonnull ByteBuffer buffer, int recordOffset) {
+    removed.add(field.getAsDouble(buffer, recordOffset), id);
+    mergeIfFull();
+  }
+
+  @Override
+  public synchronized void clear() {
+    size = 0;
+    inserted.size = 0;
+    removed.size = 0;
+  }
+
+  @Nonnull
+  public int[] lookup(double value) {
+    return range(value, value);
+  }
+
+  @Nonnull
+  public synchronized int[] range(double min, double max) {
+    int from = search(min, Integer.MIN_VALUE);
+    int to = search(max, Integer.MAX_VALUE);
+    if (0 == inserted.size && 0 == removed.size)
+      return from < to ? Arrays.copyOfRange(ids, from, to) : new int[]{};
+    final Batch adds = inserted.select(min, max);
+    final Batch drops = removed.select(min, max);
+    int[] found = new int[Math.max(0, to - from) + adds.size];
+    int n = 0;
+    int a = from;
+    int b = 0;
+    int r = 0;
+    while (a < to || b < adds.size) {
+      final boolean fromSorted = b >= adds.size
+          || (a < to && KeyedSort.compare(keys[a], ids[a], adds.keys[b], adds.ids[b]) <= 0);
+      final double key = fromSorted ? keys[a] : adds.keys[b];
+      final int id = fromSorted ? ids[a++] : adds.ids[b++];
+      while (r < drops.size && KeyedSort.compare(drops.keys[r], drops.ids[r], key, id) < 0)
+        r++;
+      if (r < drops.size && 0 == KeyedSort.compare(drops.keys[r], drops.ids[r], key, id)) {
+        r++;
+        continue;
+      }
+      found[n++] = id;
+    }
+    return n == found.length ? found : Arrays.copyOf(found, n);
+  }
+
+  @Nonnull
+  public synchronized int[] ascending() {
+    merge();
+    return Arrays.copyOf(ids, size);
+  }
+
+  public synchronized double min() {
+    merge();
+    return 0 == size ? Double.NaN : keys[0];
+  }
+
+  public synchronized double max() {
+    merge();
+    return 0 == size ? Double.NaN : keys[size - 1];
+  }
+
+  private int search(double key, int id) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (KeyedSort.compare(keys[mid], ids[mid], key, id) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  // Buffers scale with the index so that bulk loads merge a logarithmic number of times
+  private void mergeIfFull() {
+    if (inserted.size + removed.size > Math.max(MIN_BATCH, size >>> 6))
+      merge();
+  }
+
+  private void merge() {
+    if (0 == inserted.size && 0 == removed.size)
+      return;
+    inserted.sort();
+    removed.sort();
+    final int total = size + inserted.size;
+    if (keys.length < total) {
+      keys = Arrays.copyOf(keys, Math.max(total, keys.length * 2));
+      ids = Arrays.copyOf(ids, keys.length);
+    }
+    // Merged from the back so the sorted run is extended in place; a removal cancels one matching entry
+    int a = size - 1;
+    int b = inserted.size - 1;
+    int r = removed.size - 1;
+    int j = total - 1;
+    while (a >= 0 || b >= 0) {
+      final boolean fromSorted = b < 0
+          || (a >= 0 && KeyedSort.compare(keys[a], ids[a], inserted.keys[b], inserted.ids[b]) >= 0);
+      final double key = fromSorted ? keys[a] : inserted.keys[b];
+      final int id = fromSorted ? ids[a--] : inserted.ids[b--];
+      while (r >= 0 && KeyedSort.compare(removed.keys[r], removed.ids[r], key, id) > 0)
+        r--;
+      if (r >= 0 && 0 == KeyedSort.compare(removed.keys[r], removed.ids[r], key, id)) {
+        r--;
+        continue;
+      }
+      keys[j] = key;
+      ids[j--] = id;
+    }
+    final int start = j + 1;
+    size = total - start;
+    if (0 < start) {
+      System.arraycopy(keys, start, keys, 0, size);
+      System.arraycopy(ids, start, ids, 0, size);
+    }
+    inserted.size = 0;
+    removed.size = 0;
+  }
+
+  private static final class Batch {
+    private double[] keys = new double[16];
+    private int[] ids = new int[16];
+    private int size = 0;
+
+    void add(double key, int id) {
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      keys[size] = key;
+      ids[size++] = id;
+    }
+
+    void sort() {
+      KeyedSort.sort(keys, ids, 0, size - 1);
+    }
+
+    @Nonnull
+    Batch select(double min, double max) {
+      final Batch selected = new Batch();
+      for (int i = 0; i < size; i++) {
+        if (KeyedSort.compare(keys[i], ids[i], min, Integer.MIN_VALUE) >= 0
+            && KeyedSort.compare(keys[i], ids[i], max, Integer.MAX_VALUE) <= 0)
+          selected.add(keys[i], ids[i]);
+      }
+      selected.sort();
+      return selected;
+    }
+  }
+}
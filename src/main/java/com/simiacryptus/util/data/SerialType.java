@@ -26,6 +26,25 @@ import java.nio.ByteBuffer;
 public interface SerialType<T> {
   int getSize();
 
+  @Nonnull
+  default String getTypeId() {
+    return getClass().getName();
+  }
+
+  @Nonnull
+  default SerialField[] getFields() {
+    return new SerialField[]{};
+  }
+
+  @Nonnull
+  default SerialField getField(@Nonnull String name) {
+    for (SerialField field : getFields()) {
+      if (field.name.equals(name))
+        return field;
+    }
+    throw new IllegalArgumentException(name);
+  }
+
   @Nonnull
   default SerialArrayList<T> newList() {
     return new SerialArrayList<T>(this);
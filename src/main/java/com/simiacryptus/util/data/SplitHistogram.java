@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+final class SplitHistogram {
+  final int dim;
+  @Nonnull
+  final double[] boundaries;
+  private final int dims;
+  private final long[] counts;
+  private final double[] max;
+  private final double[] min;
+
+  SplitHistogram(int dim, int dims, @Nonnull double[] boundaries) {
+    this.dim = dim;
+    this.dims = dims;
+    this.boundaries = boundaries;
+    final int bins = boundaries.length + 1;
+    this.counts = new long[bins];
+    this.max = new double[bins * dims];
+    this.min = new double[bins * dims];
+    Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    Arrays.fill(min, Double.POSITIVE_INFINITY);
+  }
+
+  @Nonnull
+  static double[] boundaries(@Nonnull QuantileSketch sketch, int bins) {
+    final double[] boundaries = new double[Math.max(0, bins - 1)];
+    int count = 0;
+    for (int j = 1; j < bins; j++) {
+      final double value = sketch.getQuantile((double) j / bins);
+      if (Double.isFinite(value) && (0 == count || value > boundaries[count - 1]))
+        boundaries[count++] = value;
+    }
+    return Arrays.copyOf(boundaries, count);
+  }
+
+  // Bin b holds values in [boundaries[b-1], boundaries[b]), matching the rule pt[dim] < boundaries[b]
+  int bin(double value) {
+    int lo = 0;
+    int hi = boundaries.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (boundaries[mid] <= value) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  void add(@Nonnull double[] pt) {
+    final double value = pt[dim];
+    if (!Double.isFinite(value))
+      return;
+    final int bin = bin(value);
+    counts[bin]++;
+    final int offset = bin * dims;
+    for (int d = 0; d < dims; d++) {
+      final double x = pt[d];
+      if (Double.isFinite(x)) {
+        if (x > max[offset + d])
+          max[offset + d] = x;
+        if (x < min[offset + d])
+          min[offset + d] = x;
+      }
+    }
+  }
+
+  void add(@Nonnull SplitHistogram other) {
+    assert other.dim == dim && other.counts.length == counts.length;
+    for (int b = 0; b < counts.length; b++) {
+      counts[b] += other.counts[b];
+    }
+    for (int i = 0; i < max.length; i++) {
+      max[i] = Math.max(max[i], other.max[i]);
+      min[i] = Math.min(min[i], other.min[i]);
+    }
+  }
+
+  long getCount() {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  long countBelow(double threshold) {
+    final int bins = bin(threshold);
+    long total = 0;
+    for (int b = 0; b < bins; b++) {
+      total += counts[b];
+    }
+    return total;
+  }
+
+  @Nullable
+  double[] bestSplit(double volume, double minSplitFract, double minFitness) {
+    final int bins = counts.length;
+    if (bins < 2)
+      return null;
+    final long size = getCount();
+    final long minSize = (long) Math.max(size * minSplitFract, 1);
+    final double[] prefix = new double[bins];
+    final double[] suffix = new double[bins];
+    sweep(prefix, false);
+    sweep(suffix, true);
+    double bestFitness = Double.NEGATIVE_INFINITY;
+    int best = -1;
+    long leftCount = 0;
+    for (int b = 0; b < bins - 1; b++) {
+      leftCount += counts[b];
+      final long rightCount = size - leftCount;
+      if (minSize >= leftCount || minSize >= rightCount)
+        continue;
+      final double fitness = -(leftCount * Math.log(prefix[b] / volume) + rightCount * Math.log(suffix[b + 1] / volume))
+          / (size * Math.log(2));
+      if (fitness > minFitness && Double.isFinite(fitness) && fitness > bestFitness) {
+        bestFitness = fitness;
+        best = b;
+      }
+    }
+    return best < 0 ? null : new double[]{boundaries[best], bestFitness};
+  }
+
+  private void sweep(@Nonnull double[] volumes, boolean reverse) {
+    final int bins = counts.length;
+    final double[] runMax = new double[dims];
+    final double[] runMin = new double[dims];
+    Arrays.fill(runMax, Double.NEGATIVE_INFINITY);
+    Arrays.fill(runMin, Double.POSITIVE_INFINITY);
+    for (int j = 0; j < bins; j++) {
+      final int b = reverse ? bins - 1 - j : j;
+      final int offset = b * dims;
+      for (int d = 0; d < dims; d++) {
+        runMax[d] = Math.max(runMax[d], max[offset + d]);
+        runMin[d] = Math.min(runMin[d], min[offset + d]);
+      }
+      double volume = Double.NaN;
+      for (int d = 0; d < dims; d++) {
+        final double x = runMax[d] - runMin[d];
+        if (Double.isFinite(x) && x > 0.0)
+          volume = Double.isNaN(volume) ? x : volume * x;
+      }
+      volumes[b] = volume;
+    }
+  }
+}
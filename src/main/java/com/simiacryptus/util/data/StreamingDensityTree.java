@@ -0,0 +1,370 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class StreamingDensityTree {
+  @Nonnull
+  private final DensityTree settings;
+  private int binCount;
+
+  public StreamingDensityTree(@Nonnull DensityTree settings) {
+    this.settings = settings;
+    this.binCount = 0 < settings.getBinCount() ? settings.getBinCount() : 64;
+  }
+
+  public int getBinCount() {
+    return binCount;
+  }
+
+  @Nonnull
+  public StreamingDensityTree setBinCount(int binCount) {
+    if (binCount < 2)
+      throw new IllegalArgumentException("binCount must be at least 2: " + binCount);
+    this.binCount = binCount;
+    return this;
+  }
+
+  @Nonnull
+  public DensityTree getSettings() {
+    return settings;
+  }
+
+  @Nonnull
+  public static Supplier<Stream<double[][]>> chunks(@Nonnull File file, int dims, int chunkSize) {
+    return () -> {
+      final FileChannel channel;
+      try {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      } catch (IOException e) {
+        throw Util.throwException(e);
+      }
+      return StreamSupport.stream(new ChunkSpliterator(channel, dims, chunkSize), false).onClose(() -> {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          throw Util.throwException(e);
+        }
+      });
+    };
+  }
+
+  @Nonnull
+  public FlatDensityTree fit(@Nonnull Supplier<? extends Stream<double[][]>> chunks) {
+    final double[][] boundaries = getBinBoundaries(chunks);
+    final int dims = boundaries.length;
+    final Tree tree = new Tree();
+    tree.add(-1, 0, 0);
+    int[] frontier = {0};
+    while (frontier.length > 0) {
+      final NodeStats[] stats = new NodeStats[frontier.length];
+      final int[] slots = new int[tree.size];
+      Arrays.fill(slots, -1);
+      for (int i = 0; i < frontier.length; i++) {
+        slots[frontier[i]] = i;
+        stats[i] = new NodeStats(dims, tree.depths[frontier[i]] < settings.getMaxDepth() ? boundaries : null);
+      }
+      // One pass over the data per level: route each point through the fixed upper tree into its frontier node
+      try (Stream<double[][]> stream = chunks.get()) {
+        stream.forEach(chunk -> tree.accumulate(chunk, slots, stats));
+      }
+      final int[] next = new int[2 * frontier.length];
+      int count = 0;
+      for (int i = 0; i < frontier.length; i++) {
+        final int node = frontier[i];
+        final NodeStats nodeStats = stats[i];
+        tree.counts[node] = nodeStats.count;
+        tree.volumes[node] = DensityTree.volume(nodeStats.max, nodeStats.min);
+        if (nodeStats.count <= settings.getSplitSizeThreshold())
+          continue;
+        final SplitHistogram histogram = nodeStats.bestHistogram(tree.volumes[node]);
+        if (null == histogram)
+          continue;
+        final double threshold = histogram.bestSplit(tree.volumes[node], settings.getMinSplitFract(), settings.getMinFitness())[0];
+        final long leftCount = histogram.countBelow(threshold);
+        if (0 == leftCount || nodeStats.count == leftCount)
+          continue;
+        tree.dims[node] = histogram.dim;
+        tree.thresholds[node] = threshold;
+        final int depth = tree.depths[node];
+        // Same bit encoding as DensityTree.Node.predict
+        next[count++] = tree.add(node, depth + 1, tree.leafIds[node] + (depth < 32 ? 1 << depth : 0));
+        next[count++] = tree.add(node, depth + 1, tree.leafIds[node]);
+      }
+      frontier = Arrays.copyOf(next, count);
+    }
+    final String[] names = new String[dims];
+    final CharSequence[] columnNames = settings.getColumnNames();
+    for (int d = 0; d < dims; d++) {
+      names[d] = d < columnNames.length ? columnNames[d].toString() : Integer.toString(d);
+    }
+    return tree.toFlat(names);
+  }
+
+  @Nonnull
+  public double[][] getBinBoundaries(@Nonnull Supplier<? extends Stream<double[][]>> chunks) {
+    final QuantileSketch[][] sketches = {null};
+    try (Stream<double[][]> stream = chunks.get()) {
+      stream.forEach(chunk -> {
+        if (0 == chunk.length)
+          return;
+        final int dims = chunk[0].length;
+        final QuantileSketch[] local = new QuantileSketch[dims];
+        for (int d = 0; d < dims; d++) {
+          local[d] = new QuantileSketch(Math.max(200, 4 * binCount));
+          for (double[] pt : chunk) {
+            if (Double.isFinite(pt[d]))
+              local[d].add(pt[d]);
+          }
+        }
+        synchronized (sketches) {
+          if (null == sketches[0]) {
+            sketches[0] = local;
+          } else {
+            for (int d = 0; d < dims; d++) {
+              sketches[0][d].merge(local[d]);
+            }
+          }
+        }
+      });
+    }
+    if (null == sketches[0])
+      throw new IllegalArgumentException("No data");
+    final double[][] boundaries = new double[sketches[0].length][];
+    for (int d = 0; d < boundaries.length; d++) {
+      boundaries[d] = SplitHistogram.boundaries(sketches[0][d], binCount);
+    }
+    return boundaries;
+  }
+
+  private final class NodeStats {
+    final double[] max;
+    final double[] min;
+    @Nullable
+    final SplitHistogram[] histograms;
+    long count;
+
+    NodeStats(int dims, @Nullable double[][] boundaries) {
+      this.max = new double[dims];
+      this.min = new double[dims];
+      Arrays.fill(max, Double.NaN);
+      Arrays.fill(min, Double.NaN);
+      if (null == boundaries) {
+        this.histograms = null;
+      } else {
+        this.histograms = new SplitHistogram[dims];
+        for (int d = 0; d < dims; d++) {
+          histograms[d] = new SplitHistogram(d, dims, boundaries[d]);
+        }
+      }
+    }
+
+    void add(@Nonnull double[] pt) {
+      count++;
+      for (int d = 0; d < max.length; d++) {
+        final double x = pt[d];
+        if (Double.isFinite(x)) {
+          if (!(x <= max[d]))
+            max[d] = x;
+          if (!(x >= min[d]))
+            min[d] = x;
+        }
+      }
+      if (null != histograms) {
+        for (SplitHistogram histogram : histograms) {
+          histogram.add(pt);
+        }
+      }
+    }
+
+    @Nullable
+    SplitHistogram bestHistogram(double volume) {
+      if (null == histograms)
+        return null;
+      SplitHistogram best = null;
+      double bestFitness = Double.NEGATIVE_INFINITY;
+      for (SplitHistogram histogram : histograms) {
+        final double[] split = histogram.bestSplit(volume, settings.getMinSplitFract(), settings.getMinFitness());
+        if (null != split && split[1] > bestFitness) {
+          bestFitness = split[1];
+          best = histogram;
+        }
+      }
+      return best;
+    }
+  }
+
+  private static final class Tree {
+    int size;
+    int[] dims = new int[16];
+    double[] thresholds = new double[16];
+    int[] children = new int[16];
+    int[] depths = new int[16];
+    int[] leafIds = new int[16];
+    long[] counts = new long[16];
+    double[] volumes = new double[16];
+
+    int add(int parent, int depth, int leafId) {
+      if (size == dims.length) {
+        final int capacity = 2 * size;
+        dims = Arrays.copyOf(dims, capacity);
+        thresholds = Arrays.copyOf(thresholds, capacity);
+        children = Arrays.copyOf(children, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        leafIds = Arrays.copyOf(leafIds, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        volumes = Arrays.copyOf(volumes, capacity);
+      }
+      // Siblings are always added as a consecutive pair, left first
+      if (0 <= parent && -1 == children[parent])
+        children[parent] = size;
+      dims[size] = -1;
+      thresholds[size] = Double.NaN;
+      children[size] = -1;
+      depths[size] = depth;
+      leafIds[size] = leafId;
+      return size++;
+    }
+
+    int route(@Nonnull double[] pt) {
+      int node = 0;
+      int dim;
+      while ((dim = dims[node]) >= 0) {
+        node = children[node] + (pt[dim] < thresholds[node] ? 0 : 1);
+      }
+      return node;
+    }
+
+    void accumulate(@Nonnull double[][] chunk, @Nonnull int[] slots, @Nonnull NodeStats[] stats) {
+      // Group the chunk by frontier node so each node's stats are locked once per chunk
+      final int[] slot = new int[chunk.length];
+      final int[] offsets = new int[stats.length + 1];
+      for (int i = 0; i < chunk.length; i++) {
+        slot[i] = slots[route(chunk[i])];
+        if (slot[i] >= 0)
+          offsets[slot[i] + 1]++;
+      }
+      for (int s = 0; s < stats.length; s++) {
+        offsets[s + 1] += offsets[s];
+      }
+      final int[] order = new int[offsets[stats.length]];
+      final int[] position = Arrays.copyOf(offsets, stats.length);
+      for (int i = 0; i < chunk.length; i++) {
+        if (slot[i] >= 0)
+          order[position[slot[i]]++] = i;
+      }
+      for (int s = 0; s < stats.length; s++) {
+        if (offsets[s] == offsets[s + 1])
+          continue;
+        final NodeStats nodeStats = stats[s];
+        synchronized (nodeStats) {
+          for (int j = offsets[s]; j < offsets[s + 1]; j++) {
+            nodeStats.add(chunk[order[j]]);
+          }
+        }
+      }
+    }
+
+    @Nonnull
+    FlatDensityTree toFlat(@Nonnull String[] names) {
+      return new FlatDensityTree(names, Arrays.copyOf(dims, size), Arrays.copyOf(thresholds, size),
+          Arrays.copyOf(children, size), Arrays.copyOf(leafIds, size), Arrays.copyOf(counts, size),
+          Arrays.copyOf(volumes, size));
+    }
+  }
+
+  private static final class ChunkSpliterator extends Spliterators.AbstractSpliterator<double[][]> {
+    private static final int WINDOW = 1 << 20;
+    private final FileChannel channel;
+    private final int dims;
+    private final int chunkSize;
+    private final long records;
+    // One reused direct buffer; mapping per chunk would leave a mapping alive per chunk until GC
+    @Nonnull
+    private final ByteBuffer buffer;
+    private long position;
+
+    ChunkSpliterator(@Nonnull FileChannel channel, int dims, int chunkSize) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.channel = channel;
+      this.dims = dims;
+      this.chunkSize = chunkSize;
+      try {
+        this.records = channel.size() / (8L * dims);
+      } catch (IOException e) {
+        throw Util.throwException(e);
+      }
+      this.buffer = ByteBuffer.allocateDirect(8 * dims * (int) Math.max(1, Math.min(chunkSize, WINDOW / (8L * dims))));
+    }
+
+    @Override
+    public boolean tryAdvance(@Nonnull Consumer<? super double[][]> action) {
+      if (position >= records)
+        return false;
+      final int count = (int) Math.min(chunkSize, records - position);
+      final double[][] chunk = new double[count][dims];
+      final int recordsPerRead = buffer.capacity() / (8 * dims);
+      int row = 0;
+      try {
+        while (row < count) {
+          final int rows = Math.min(count - row, recordsPerRead);
+          buffer.clear().limit(8 * dims * rows);
+          long offset = 8L * dims * (position + row);
+          while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0)
+              throw new EOFException("Unexpected end of file at offset " + offset);
+            offset += read;
+          }
+          buffer.flip();
+          // Records are big-endian doubles as written by DataOutputStream
+          final DoubleBuffer doubles = buffer.asDoubleBuffer();
+          for (int i = 0; i < rows; i++) {
+            doubles.get(chunk[row + i]);
+          }
+          row += rows;
+        }
+      } catch (IOException e) {
+        throw Util.throwException(e);
+      }
+      position += count;
+      action.accept(chunk);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+@SuppressWarnings("serial")
+public class StripedStatistics implements MonitoredItem, Serializable {
+  private final LongAdder sum0 = new LongAdder();
+  private final DoubleAdder sum1 = new DoubleAdder();
+  private final DoubleAdder sum2 = new DoubleAdder();
+  private final DoubleAdder sumLog = new DoubleAdder();
+  private final LongAdder negatives = new LongAdder();
+  private final LongAdder positives = new LongAdder();
+  private final LongAdder zeros = new LongAdder();
+  private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+  private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+  public long getCount() {
+    return sum0.sum();
+  }
+
+  public double getSum() {
+    return sum1.sum();
+  }
+
+  public double getSumOfSquare() {
+    return sum2.sum();
+  }
+
+  public double getMin() {
+    return min.get();
+  }
+
+  public double getMax() {
+    return max.get();
+  }
+
+  public long getZeros() {
+    return zeros.sum();
+  }
+
+  public double getMean() {
+    return sum1.sum() / sum0.sum();
+  }
+
+  public double getMeanPower() {
+    return sumLog.sum() / (sum0.sum() - zeros.sum());
+  }
+
+  public double getStdDev() {
+    long count = sum0.sum();
+    double mean = sum1.sum() / count;
+    return Math.sqrt(Math.max(0, sum2.sum() / count - mean * mean));
+  }
+
+  @Override
+  public Map<CharSequence, Object> getMetrics() {
+    return toScalarStatistics().getMetrics();
+  }
+
+  public void add(final double v) {
+    sum0.increment();
+    sum1.add(v);
+    sum2.add(v * v);
+    if (v < min.get())
+      min.accumulate(v);
+    if (v > max.get())
+      max.accumulate(v);
+    if (Math.abs(v) < ScalarStatistics.zeroTol) {
+      zeros.increment();
+    } else {
+      if (v < 0) {
+        negatives.increment();
+      } else {
+        positives.increment();
+      }
+      sumLog.add(Math.log10(Math.abs(v)));
+    }
+  }
+
+  @Nonnull
+  public StripedStatistics add(@Nonnull final double... values) {
+    double v1 = 0;
+    double v2 = 0;
+    double vmin = Double.POSITIVE_INFINITY;
+    double vmax = Double.NEGATIVE_INFINITY;
+    double vlog = 0;
+    int z = 0;
+    int n = 0;
+    int p = 0;
+    for (final double v : values) {
+      v1 += v;
+      v2 += v * v;
+      vmin = Math.min(vmin, v);
+      vmax = Math.max(vmax, v);
+      if (Math.abs(v) < ScalarStatistics.zeroTol) {
+        z++;
+      } else {
+        if (v < 0) {
+          n++;
+        } else {
+          p++;
+        }
+        vlog += Math.log10(Math.abs(v));
+      }
+    }
+    sum0.add(values.length);
+    sum1.add(v1);
+    sum2.add(v2);
+    min.accumulate(vmin);
+    max.accumulate(vmax);
+    zeros.add(z);
+    negatives.add(n);
+    positives.add(p);
+    sumLog.add(vlog);
+    return this;
+  }
+
+  @Nonnull
+  public ScalarStatistics toScalarStatistics() {
+    return new ScalarStatistics((int) sum0.sum(), sum1.sum(), sum2.sum(), min.get(), max.get(), (int) negatives.sum(),
+        (int) positives.sum(), (int) zeros.sum(), sumLog.sum());
+  }
+
+  @Nonnull
+  public ScalarStatistics getThenReset() {
+    return new ScalarStatistics((int) sum0.sumThenReset(), sum1.sumThenReset(), sum2.sumThenReset(), min.getThenReset(),
+        max.getThenReset(), (int) negatives.sumThenReset(), (int) positives.sumThenReset(), (int) zeros.sumThenReset(),
+        sumLog.sumThenReset());
+  }
+
+  public void clear() {
+    sum0.reset();
+    sum1.reset();
+    sum2.reset();
+    sumLog.reset();
+    negatives.reset();
+    positives.reset();
+    zeros.reset();
+    min.reset();
+    max.reset();
+  }
+
+  @Override
+  public String toString() {
+    return getMetrics().toString();
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import com.simiacryptus.util.MonitoredItem;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+public class WindowedStatistics implements MonitoredItem {
+  private final long bucketNanos;
+  @Nonnull
+  private final ScalarStatistics[] buckets;
+  @Nonnull
+  private final long[] epochs;
+  @Nonnull
+  private final LongSupplier clock;
+
+  public WindowedStatistics(long window, @Nonnull TimeUnit unit) {
+    this(window, unit, 60);
+  }
+
+  public WindowedStatistics(long window, @Nonnull TimeUnit unit, int bucketCount) {
+    this(window, unit, bucketCount, System::nanoTime);
+  }
+
+  public WindowedStatistics(long window, @Nonnull TimeUnit unit, int bucketCount, @Nonnull LongSupplier clock) {
+    if (bucketCount < 1)
+      throw new IllegalArgumentException("bucketCount = " + bucketCount);
+    this.bucketNanos = Math.max(1, unit.toNanos(window) / bucketCount);
+    this.clock = clock;
+    this.buckets = new ScalarStatistics[bucketCount];
+    this.epochs = new long[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      buckets[i] = new ScalarStatistics();
+      epochs[i] = Long.MIN_VALUE;
+    }
+  }
+
+  public long getWindowNanos() {
+    return bucketNanos * buckets.length;
+  }
+
+  @Override
+  public Map<CharSequence, Object> getMetrics() {
+    return getStatistics().getMetrics();
+  }
+
+  @Nonnull
+  public ScalarStatistics getStatistics() {
+    final long epoch = clock.getAsLong() / bucketNanos;
+    @Nonnull final ScalarStatistics statistics = new ScalarStatistics();
+    for (int slot = 0; slot < buckets.length; slot++) {
+      final ScalarStatistics bucket = buckets[slot];
+      synchronized (bucket) {
+        if (epochs[slot] > epoch - buckets.length && epochs[slot] <= epoch) {
+          statistics.accumulate(bucket);
+        }
+      }
+    }
+    return statistics;
+  }
+
+  public void add(final double v) {
+    final long epoch = clock.getAsLong() / bucketNanos;
+    final ScalarStatistics bucket = bucket(epoch);
+    synchronized (bucket) {
+      if (claim(epoch))
+        bucket.add(v);
+    }
+  }
+
+  public void add(@Nonnull final double... values) {
+    final long epoch = clock.getAsLong() / bucketNanos;
+    final ScalarStatistics bucket = bucket(epoch);
+    synchronized (bucket) {
+      if (claim(epoch))
+        bucket.add(values);
+    }
+  }
+
+  public void clear() {
+    for (int slot = 0; slot < buckets.length; slot++) {
+      final ScalarStatistics bucket = buckets[slot];
+      synchronized (bucket) {
+        bucket.clear();
+        epochs[slot] = Long.MIN_VALUE;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getMetrics().toString();
+  }
+
+  @Nonnull
+  private ScalarStatistics bucket(final long epoch) {
+    return buckets[(int) Math.floorMod(epoch, (long) buckets.length)];
+  }
+
+  // Must hold the bucket's lock, so the epoch check, recycle and add are one step
+  private boolean claim(final long epoch) {
+    final int slot = (int) Math.floorMod(epoch, (long) buckets.length);
+    if (epochs[slot] > epoch) {
+      // A slow writer's sub-interval was already recycled for a newer one; its window has expired
+      return false;
+    }
+    // The slot is recycled lazily when a writer first reaches a new sub-interval
+    if (epochs[slot] != epoch) {
+      buckets[slot].clear();
+      epochs[slot] = epoch;
+    }
+    return true;
+  }
+}
@@ -24,14 +24,20 @@ import com.simiacryptus.ref.wrappers.*;
 import com.simiacryptus.util.Util;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.NoSuchElementException;
 import java.util.Spliterator;
 
 public final class BinaryChunkIterator extends RefIteratorBase<byte[]> {
 
   private final DataInputStream in;
   private final int recordSize;
+  @Nullable
+  private byte[] next;
+  private boolean eof;
 
   public BinaryChunkIterator(final DataInputStream in, final int recordSize) {
     super();
@@ -58,14 +64,16 @@ public final class BinaryChunkIterator extends RefIteratorBase<byte[]> {
         .stream(RefSpliterators.spliterator(iterator, size, Spliterator.ORDERED), parallel);
   }
 
-  @Nonnull
+  @Nullable
   private static byte[] read(@Nonnull final DataInputStream i, final int s) throws IOException {
     @Nonnull final byte[] b = new byte[s];
     int pos = 0;
     while (b.length > pos) {
       final int read = i.read(b, pos, b.length - pos);
-      if (0 == read) {
-        throw new RuntimeException();
+      if (read < 0) {
+        if (0 == pos)
+          return null;
+        throw new EOFException(String.format("Truncated record: %s of %s bytes", pos, s));
       }
       pos += read;
     }
@@ -74,22 +82,26 @@ public final class BinaryChunkIterator extends RefIteratorBase<byte[]> {
 
   @Override
   public boolean hasNext() {
-    try {
-      return 0 < in.available();
-    } catch (@Nonnull final Throwable e) {
-      return false;
+    // Read ahead one record; available() is not a reliable end-of-stream test for gzip or socket streams
+    if (null == next && !eof) {
+      try {
+        next = BinaryChunkIterator.read(in, recordSize);
+      } catch (@Nonnull final IOException e) {
+        throw Util.throwException(e);
+      }
+      eof = null == next;
     }
+    return null != next;
   }
 
   @Nonnull
   @Override
   public byte[] next() {
-    assert hasNext();
-    try {
-      return BinaryChunkIterator.read(in, recordSize);
-    } catch (@Nonnull final IOException e) {
-      throw Util.throwException(e);
-    }
+    if (!hasNext())
+      throw new NoSuchElementException();
+    final byte[] record = next;
+    next = null;
+    return record;
   }
 
   public RefStream<byte[]> toStream() {
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class BlockGzipOutputStream extends OutputStream {
+  public static final int MAX_BLOCK_SIZE = 0xff00;
+  static final int HEADER_SIZE = 18;
+  static final int TRAILER_SIZE = 8;
+  @Nonnull
+  private final OutputStream out;
+  @Nonnull
+  private final Deflater deflater;
+  private final CRC32 crc = new CRC32();
+  @Nonnull
+  private final byte[] block;
+  @Nonnull
+  private final byte[] compressed;
+  private int length;
+  private long position;
+  private long[] offsets = new long[16];
+  private int blocks;
+  private boolean closed;
+
+  public BlockGzipOutputStream(@Nonnull OutputStream out) {
+    this(out, MAX_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  public BlockGzipOutputStream(@Nonnull OutputStream out, int blockSize, int level) {
+    if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE)
+      throw new IllegalArgumentException("blockSize must be in 1.." + MAX_BLOCK_SIZE + ": " + blockSize);
+    this.out = out;
+    this.deflater = new Deflater(level, true);
+    this.block = new byte[blockSize];
+    this.compressed = new byte[0x10000];
+  }
+
+  @Nonnull
+  public long[] getBlockOffsets() {
+    return Arrays.copyOf(offsets, blocks);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (length == block.length)
+      writeBlock();
+    block[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (length == block.length)
+        writeBlock();
+      final int n = Math.min(len, block.length - length);
+      System.arraycopy(b, off, block, length, n);
+      length += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (length > 0)
+      writeBlock();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    try {
+      if (length > 0)
+        writeBlock();
+      // An empty block marks a complete file, as in BGZF
+      writeBlock();
+      out.flush();
+    } finally {
+      deflater.end();
+      out.close();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    deflater.reset();
+    deflater.setInput(block, 0, length);
+    deflater.finish();
+    int size = 0;
+    while (!deflater.finished()) {
+      size += deflater.deflate(compressed, size, compressed.length - HEADER_SIZE - TRAILER_SIZE - size);
+      if (size >= compressed.length - HEADER_SIZE - TRAILER_SIZE)
+        throw new IOException("Compressed block overflow");
+    }
+    crc.reset();
+    crc.update(block, 0, length);
+    // Each block is a complete gzip member, so the file also decompresses with plain gunzip
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    header.put((byte) 31).put((byte) 139).put((byte) 8).put((byte) 4);
+    header.putInt(0).put((byte) 0).put((byte) 255);
+    header.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+    header.putShort((short) (HEADER_SIZE + size + TRAILER_SIZE - 1));
+    final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    trailer.putInt((int) crc.getValue()).putInt(length);
+    if (blocks == offsets.length)
+      offsets = Arrays.copyOf(offsets, 2 * blocks);
+    offsets[blocks++] = position;
+    out.write(header.array());
+    out.write(compressed, 0, size);
+    out.write(trailer.array());
+    position += HEADER_SIZE + size + TRAILER_SIZE;
+    length = 0;
+  }
+}
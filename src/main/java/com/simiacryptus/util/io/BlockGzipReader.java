@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static com.simiacryptus.util.io.BlockGzipOutputStream.HEADER_SIZE;
+import static com.simiacryptus.util.io.BlockGzipOutputStream.TRAILER_SIZE;
+
+public final class BlockGzipReader implements Closeable {
+  @Nonnull
+  private final FileChannel channel;
+  @Nonnull
+  private final long[] offsets;
+  @Nonnull
+  private final int[] sizes;
+
+  public BlockGzipReader(@Nonnull File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      // The offset index comes from the block sizes in each header, so no separate index file is needed
+      final long end = channel.size();
+      long[] offsets = new long[16];
+      int[] sizes = new int[16];
+      int count = 0;
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      for (long position = 0; position < end; ) {
+        header.clear();
+        readFully(header, position);
+        if ((header.get(0) & 0xFF) != 31 || (header.get(1) & 0xFF) != 139 || header.get(3) != 4
+            || header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C')
+          throw new IOException("Not a block gzip file at offset " + position);
+        final int size = (header.getShort(16) & 0xFFFF) + 1;
+        if (count == offsets.length) {
+          offsets = Arrays.copyOf(offsets, 2 * count);
+          sizes = Arrays.copyOf(sizes, 2 * count);
+        }
+        offsets[count] = position;
+        sizes[count++] = size;
+        position += size;
+      }
+      this.offsets = Arrays.copyOf(offsets, count);
+      this.sizes = Arrays.copyOf(sizes, count);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Nonnull
+  public long[] getBlockOffsets() {
+    return offsets.clone();
+  }
+
+  public int getBlockCount() {
+    return offsets.length;
+  }
+
+  @Nonnull
+  public byte[] readBlock(int index) throws IOException {
+    final ByteBuffer data = ByteBuffer.allocate(sizes[index]).order(ByteOrder.LITTLE_ENDIAN);
+    readFully(data, offsets[index]);
+    final int crc = data.getInt(data.limit() - TRAILER_SIZE);
+    final byte[] block = new byte[data.getInt(data.limit() - 4)];
+    final Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(data.array(), HEADER_SIZE, data.limit() - HEADER_SIZE - TRAILER_SIZE);
+      int length = 0;
+      while (length < block.length) {
+        final int n = inflater.inflate(block, length, block.length - length);
+        if (0 == n && (inflater.finished() || inflater.needsInput()))
+          throw new EOFException("Truncated block at offset " + offsets[index]);
+        length += n;
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt block at offset " + offsets[index], e);
+    } finally {
+      inflater.end();
+    }
+    final CRC32 check = new CRC32();
+    check.update(block, 0, block.length);
+    if ((int) check.getValue() != crc)
+      throw new IOException("CRC mismatch in block at offset " + offsets[index]);
+    return block;
+  }
+
+  @Nonnull
+  public Stream<byte[]> blocks(int workers) {
+    final List<Integer> partitions = new ArrayList<>(offsets.length);
+    for (int i = 0; i < offsets.length; i++) {
+      partitions.add(i);
+    }
+    // Blocks inflate independently on the workers and come back in file order
+    return new ParallelDataLoader<Integer, byte[]>(partitions) {
+      @Override
+      protected void read(@Nonnull Integer index, @Nonnull Consumer<byte[]> sink) {
+        try {
+          sink.accept(readBlock(index));
+        } catch (IOException e) {
+          throw Util.throwException(e);
+        }
+      }
+    }.setWorkers(workers).stream();
+  }
+
+  @Nonnull
+  public Stream<byte[]> records(int recordSize, long skip, int workers) {
+    final Stream<byte[]> blocks = blocks(workers);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+        new RecordIterator(blocks.iterator(), recordSize, skip), Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(blocks::close);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void readFully(@Nonnull ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read < 0)
+        throw new EOFException("Unexpected end of file at offset " + position);
+      position += read;
+    }
+  }
+
+  private static final class RecordIterator implements Iterator<byte[]> {
+    @Nonnull
+    private final Iterator<byte[]> blocks;
+    private final int recordSize;
+    private long skip;
+    @Nullable
+    private byte[] block;
+    private int position;
+
+    RecordIterator(@Nonnull Iterator<byte[]> blocks, int recordSize, long skip) {
+      this.blocks = blocks;
+      this.recordSize = recordSize;
+      this.skip = skip;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (null == block || position >= block.length) {
+        if (!blocks.hasNext())
+          return false;
+        block = blocks.next();
+        position = 0;
+        if (skip > 0) {
+          final int n = (int) Math.min(skip, block.length);
+          position = n;
+          skip -= n;
+        }
+      }
+      return true;
+    }
+
+    @Nonnull
+    @Override
+    public byte[] next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      final byte[] record = new byte[recordSize];
+      int length = 0;
+      // Records may straddle block boundaries
+      while (length < recordSize) {
+        if (!hasNext())
+          throw Util.throwException(new EOFException(String.format("Truncated record: %s of %s bytes", length, recordSize)));
+        assert null != block;
+        final int n = Math.min(recordSize - length, block.length - position);
+        System.arraycopy(block, position, record, length, n);
+        position += n;
+        length += n;
+      }
+      return record;
+    }
+  }
+}
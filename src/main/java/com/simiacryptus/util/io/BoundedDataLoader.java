@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public abstract class BoundedDataLoader<T> {
+  private static final Object END = new Object();
+  private final int capacity;
+  @Nullable
+  private volatile BlockingQueue<Object> queue;
+  @Nullable
+  private volatile Thread thread;
+  @Nullable
+  private volatile Throwable error;
+
+  public BoundedDataLoader(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    this.capacity = capacity;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getQueueSize() {
+    final BlockingQueue<Object> queue = this.queue;
+    return null == queue ? 0 : queue.size();
+  }
+
+  public void stop() {
+    final Thread thread;
+    synchronized (this) {
+      thread = this.thread;
+      this.thread = null;
+      this.queue = null;
+    }
+    if (null != thread) {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (@Nonnull final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Nonnull
+  public synchronized Stream<T> stream() {
+    if (null != thread)
+      throw new IllegalStateException("Loader is already running");
+    final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(capacity);
+    this.queue = queue;
+    this.error = null;
+    final Thread thread = new Thread(() -> {
+      try {
+        read(item -> {
+          try {
+            // Blocks while the queue is full, so a fast producer waits for the consumer
+            queue.put(item);
+          } catch (@Nonnull final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Util.throwException(e);
+          }
+        });
+      } catch (@Nonnull final Throwable e) {
+        if (!Thread.currentThread().isInterrupted())
+          error = e;
+      } finally {
+        if (Thread.currentThread().isInterrupted()) {
+          // Stopped: drop the buffered items so the end marker always fits
+          queue.clear();
+          queue.offer(END);
+        } else {
+          try {
+            queue.put(END);
+          } catch (@Nonnull final InterruptedException e) {
+            queue.clear();
+            queue.offer(END);
+          }
+        }
+      }
+    });
+    thread.setDaemon(true);
+    this.thread = thread;
+    thread.start();
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(new QueueIterator(queue), Spliterator.ORDERED | Spliterator.NONNULL),
+        false).onClose(this::stop);
+  }
+
+  protected abstract void read(@Nonnull Consumer<T> sink);
+
+  private final class QueueIterator implements Iterator<T> {
+    @Nonnull
+    private final BlockingQueue<Object> queue;
+    @Nullable
+    private Object next;
+    private boolean done;
+
+    QueueIterator(@Nonnull BlockingQueue<Object> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (null != next)
+        return true;
+      if (done)
+        return false;
+      try {
+        // Consumed items leave the queue, so only the buffered window is retained
+        next = queue.take();
+      } catch (@Nonnull final InterruptedException e) {
+        throw Util.throwException(e);
+      }
+      if (END == next) {
+        next = null;
+        done = true;
+        synchronized (BoundedDataLoader.this) {
+          if (queue == BoundedDataLoader.this.queue) {
+            BoundedDataLoader.this.thread = null;
+            BoundedDataLoader.this.queue = null;
+          }
+        }
+        final Throwable error = BoundedDataLoader.this.error;
+        if (null != error)
+          throw Util.throwException(error);
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      final T item = (T) next;
+      next = null;
+      return item;
+    }
+  }
+}
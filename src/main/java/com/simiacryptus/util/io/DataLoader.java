@@ -69,7 +69,7 @@ public abstract class DataLoader<T> extends ReferenceCountingBase {
     }
     @Nullable final RefIteratorBase<T> iterator = new AsyncListIterator<>(queue == null ? null : queue.addRef(), thread);
     return RefStreamSupport.stream(
-        RefSpliterators.spliteratorUnknownSize(iterator, Spliterator.DISTINCT),
+        RefSpliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED),
         false).filter(x -> x != null);
   }
 
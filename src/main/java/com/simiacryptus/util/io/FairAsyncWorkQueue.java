@@ -19,39 +19,27 @@
 
 package com.simiacryptus.util.io;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.atomic.AtomicBoolean;
+public class FairAsyncWorkQueue {
+  @Nonnull
+  private final FairWorkScheduler.SerialQueue queue;
 
-public class FairAsyncWorkQueue implements Runnable {
-  private final AtomicBoolean isRunning = new AtomicBoolean(false);
-  private final ExecutorService pool = Executors
-      .newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).build());
-  private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<>();
+  public FairAsyncWorkQueue() {
+    this(FairWorkScheduler.getDefault());
+  }
+
+  public FairAsyncWorkQueue(@Nonnull FairWorkScheduler scheduler) {
+    this.queue = scheduler.newQueue();
+  }
 
-  @Override
-  public void run() {
-    if (isRunning.getAndSet(true)) {
-      try {
-        while (true) {
-          final Runnable poll = queue.poll();
-          if (null != poll) {
-            poll.run();
-          } else {
-            break;
-          }
-        }
-      } finally {
-        isRunning.set(false);
-      }
-    }
+  public int getDepth() {
+    return queue.getDepth();
   }
 
-  public void submit(final Runnable task) {
-    queue.add(task);
-    pool.submit(this);
+  @Nonnull
+  public CompletableFuture<Void> submit(final Runnable task) {
+    return queue.submit(task);
   }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import com.simiacryptus.util.MonitoredItem;
+import com.simiacryptus.util.data.LogLinearHistogram;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FairWorkScheduler implements MonitoredItem, AutoCloseable {
+  @Nullable
+  private static volatile FairWorkScheduler defaultScheduler;
+  @Nonnull
+  private final Executor executor;
+  // Only a pool this scheduler created is shut down on close
+  @Nullable
+  private final ExecutorService ownedPool;
+  private final int maxWorkers;
+  // Queues with pending work that no worker currently owns, served round-robin
+  private final ArrayDeque<SerialQueue> ready = new ArrayDeque<>();
+  // Weak so that short-lived queues, such as one per output stream, are not retained just for metrics
+  private final Set<SerialQueue> queues = Collections.newSetFromMap(new WeakHashMap<>());
+  private final AtomicInteger queueIds = new AtomicInteger();
+  private final AtomicInteger queueNames = new AtomicInteger();
+  private int activeWorkers;
+
+  public FairWorkScheduler(int maxWorkers) {
+    this(daemonPool(maxWorkers), maxWorkers, true);
+  }
+
+  public FairWorkScheduler(@Nonnull Executor executor, int maxWorkers) {
+    this(executor, maxWorkers, false);
+  }
+
+  private FairWorkScheduler(@Nonnull Executor executor, int maxWorkers, boolean owned) {
+    if (maxWorkers < 1)
+      throw new IllegalArgumentException("maxWorkers must be positive: " + maxWorkers);
+    this.executor = executor;
+    this.ownedPool = owned ? (ExecutorService) executor : null;
+    this.maxWorkers = maxWorkers;
+  }
+
+  @Nonnull
+  public static FairWorkScheduler getDefault() {
+    if (null == defaultScheduler) {
+      synchronized (FairWorkScheduler.class) {
+        if (null == defaultScheduler) {
+          defaultScheduler = new FairWorkScheduler(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        }
+      }
+    }
+    return defaultScheduler;
+  }
+
+  @Nonnull
+  private static ExecutorService daemonPool(int threads) {
+    final AtomicInteger index = new AtomicInteger();
+    final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), r -> {
+      final Thread thread = new Thread(r, "FairWorkScheduler-" + index.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // An idle scheduler that is never closed still releases its threads
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  public int getMaxWorkers() {
+    return maxWorkers;
+  }
+
+  public synchronized int getActiveWorkers() {
+    return activeWorkers;
+  }
+
+  @Nonnull
+  public SerialQueue newQueue() {
+    return newQueue("queue-" + queueNames.incrementAndGet(), 1);
+  }
+
+  @Nonnull
+  public SerialQueue newQueue(@Nonnull String name, int weight) {
+    if (weight < 1)
+      throw new IllegalArgumentException("weight must be positive: " + weight);
+    final SerialQueue queue = new SerialQueue(queueIds.incrementAndGet(), name, weight);
+    synchronized (this) {
+      queues.add(queue);
+    }
+    return queue;
+  }
+
+  @Nonnull
+  @Override
+  public Map<CharSequence, Object> getMetrics() {
+    @Nonnull final HashMap<CharSequence, Object> map = new HashMap<>();
+    final List<SerialQueue> queues;
+    synchronized (this) {
+      map.put("activeWorkers", activeWorkers);
+      map.put("readyQueues", ready.size());
+      queues = new ArrayList<>(this.queues);
+    }
+    map.put("maxWorkers", maxWorkers);
+    // Names are caller-supplied and may repeat, so queues are keyed by id
+    @Nonnull final HashMap<CharSequence, Object> queueMetrics = new HashMap<>();
+    for (SerialQueue queue : queues) {
+      queueMetrics.put(Integer.toString(queue.getId()), queue.getMetrics());
+    }
+    map.put("queues", queueMetrics);
+    return map;
+  }
+
+  @Override
+  public void close() {
+    if (null != ownedPool)
+      ownedPool.shutdown();
+  }
+
+  private void schedule(@Nonnull SerialQueue queue) {
+    synchronized (this) {
+      ready.add(queue);
+      if (activeWorkers >= maxWorkers)
+        return;
+      activeWorkers++;
+    }
+    // Started outside the lock: a direct or caller-runs executor would otherwise run tasks while holding it
+    try {
+      executor.execute(this::work);
+    } catch (@Nonnull final RuntimeException e) {
+      final boolean orphaned;
+      synchronized (this) {
+        activeWorkers--;
+        // A running worker may already have taken the queue, in which case its tasks will still run
+        orphaned = ready.remove(queue);
+      }
+      if (orphaned) {
+        queue.reject(e);
+        throw e;
+      }
+    }
+  }
+
+  private void work() {
+    while (true) {
+      final SerialQueue queue;
+      synchronized (this) {
+        queue = ready.poll();
+        if (null == queue) {
+          activeWorkers--;
+          return;
+        }
+      }
+      // A queue is in the ready list at most once and only one worker holds it, so its tasks stay serial
+      if (queue.runQuantum()) {
+        synchronized (this) {
+          ready.add(queue);
+        }
+      }
+    }
+  }
+
+  public final class SerialQueue implements MonitoredItem {
+    private final int id;
+    @Nonnull
+    private final String name;
+    private final int weight;
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+    // Coarse buckets keep per-queue latency tracking small when there are hundreds of queues
+    private final LogLinearHistogram waitNanos = new LogLinearHistogram(5, TimeUnit.MINUTES.toNanos(10));
+    private final LogLinearHistogram runNanos = new LogLinearHistogram(5, TimeUnit.MINUTES.toNanos(10));
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private boolean scheduled;
+
+    SerialQueue(int id, @Nonnull String name, int weight) {
+      this.id = id;
+      this.name = name;
+      this.weight = weight;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    @Nonnull
+    public String getName() {
+      return name;
+    }
+
+    public int getWeight() {
+      return weight;
+    }
+
+    public synchronized int getDepth() {
+      return tasks.size();
+    }
+
+    @Nonnull
+    public CompletableFuture<Void> submit(@Nonnull Runnable runnable) {
+      final Task task = new Task(runnable);
+      final boolean schedule;
+      synchronized (this) {
+        tasks.add(task);
+        schedule = !scheduled;
+        scheduled = true;
+      }
+      if (schedule)
+        schedule(this);
+      return task.future;
+    }
+
+    @Nonnull
+    @Override
+    public Map<CharSequence, Object> getMetrics() {
+      @Nonnull final HashMap<CharSequence, Object> map = new HashMap<>();
+      map.put("name", name);
+      map.put("depth", getDepth());
+      map.put("weight", weight);
+      map.put("completed", completed.get());
+      map.put("failed", failed.get());
+      map.put("waitNanos", waitNanos.getMetrics());
+      map.put("runNanos", runNanos.getMetrics());
+      return map;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("SerialQueue{name=%s, depth=%s}", name, getDepth());
+    }
+
+    // The scheduler could not start a worker for this queue, so nothing will ever drain what is pending
+    private void reject(@Nonnull Throwable cause) {
+      final List<Task> pending;
+      synchronized (this) {
+        pending = new ArrayList<>(tasks);
+        tasks.clear();
+        scheduled = false;
+      }
+      for (Task task : pending) {
+        failed.incrementAndGet();
+        task.future.completeExceptionally(cause);
+      }
+    }
+
+    // Runs up to weight tasks, then yields to the next ready queue; returns whether work remains
+    private boolean runQuantum() {
+      for (int i = 0; i < weight; i++) {
+        final Task task;
+        synchronized (this) {
+          task = tasks.poll();
+          if (null == task) {
+            scheduled = false;
+            return false;
+          }
+        }
+        final long start = System.nanoTime();
+        waitNanos.record(start - task.submitted);
+        try {
+          task.runnable.run();
+          completed.incrementAndGet();
+          task.future.complete(null);
+        } catch (@Nonnull final Throwable e) {
+          failed.incrementAndGet();
+          task.future.completeExceptionally(e);
+        }
+        runNanos.record(System.nanoTime() - start);
+      }
+      synchronized (this) {
+        if (tasks.isEmpty()) {
+          scheduled = false;
+          return false;
+        }
+        return true;
+      }
+    }
+  }
+
+  private static final class Task {
+    @Nonnull
+    final Runnable runnable;
+    final long submitted = System.nanoTime();
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    Task(@Nonnull Runnable runnable) {
+      this.runnable = runnable;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public final class MappedRecordFile {
+  private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+  private final int recordSize;
+  private final long records;
+  private final int recordsPerSegment;
+  @Nonnull
+  private final MappedByteBuffer[] segments;
+
+  public MappedRecordFile(@Nonnull File file, int recordSize) throws IOException {
+    this(file, 0, recordSize);
+  }
+
+  public MappedRecordFile(@Nonnull File file, long skip, int recordSize) throws IOException {
+    if (recordSize < 1)
+      throw new IllegalArgumentException("recordSize must be positive: " + recordSize);
+    this.recordSize = recordSize;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final long bytes = channel.size() - skip;
+      if (bytes < 0 || 0 != bytes % recordSize)
+        throw new IOException(String.format("%s bytes after offset %s is not a whole number of %s byte records", bytes, skip, recordSize));
+      this.records = bytes / recordSize;
+      // A mapping is limited to 2GB, so larger files are mapped as several record-aligned segments
+      this.recordsPerSegment = (int) Math.max(1, MAX_SEGMENT / recordSize);
+      final int count = (int) ((records + recordsPerSegment - 1) / recordsPerSegment);
+      this.segments = new MappedByteBuffer[count];
+      for (int s = 0; s < count; s++) {
+        final long first = (long) s * recordsPerSegment;
+        final long length = Math.min(recordsPerSegment, records - first) * recordSize;
+        segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, skip + first * recordSize, length);
+      }
+    }
+  }
+
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  public long size() {
+    return records;
+  }
+
+  @Nonnull
+  public ByteBuffer get(long index) {
+    final ByteBuffer view = segments[(int) (index / recordsPerSegment)].duplicate();
+    final int offset = (int) (index % recordsPerSegment) * recordSize;
+    view.limit(offset + recordSize).position(offset);
+    return view.slice();
+  }
+
+  public void get(long index, @Nonnull byte[] record) {
+    final ByteBuffer view = segments[(int) (index / recordsPerSegment)].duplicate();
+    view.position((int) (index % recordsPerSegment) * recordSize);
+    view.get(record, 0, recordSize);
+  }
+
+  @Nonnull
+  public Spliterator<ByteBuffer> spliterator() {
+    return new RecordSpliterator(0, records);
+  }
+
+  @Nonnull
+  public Stream<ByteBuffer> records(boolean parallel) {
+    return StreamSupport.stream(spliterator(), parallel);
+  }
+
+  @Nonnull
+  public Stream<byte[]> stream(boolean parallel) {
+    return records(parallel).map(view -> {
+      final byte[] record = new byte[recordSize];
+      view.get(record);
+      return record;
+    });
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MappedRecordFile{records=%s, recordSize=%s}", records, recordSize);
+  }
+
+  private final class RecordSpliterator implements Spliterator<ByteBuffer> {
+    private long index;
+    private final long end;
+
+    RecordSpliterator(long index, long end) {
+      this.index = index;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(@Nonnull Consumer<? super ByteBuffer> action) {
+      if (index >= end)
+        return false;
+      action.accept(get(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(@Nonnull Consumer<? super ByteBuffer> action) {
+      while (index < end) {
+        action.accept(get(index++));
+      }
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<ByteBuffer> trySplit() {
+      final long mid = (index + end) >>> 1;
+      if (mid <= index)
+        return null;
+      final RecordSpliterator prefix = new RecordSpliterator(index, mid);
+      index = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public abstract class ParallelDataLoader<P, T> {
+  @Nonnull
+  private final List<P> partitions;
+  private int workers = Runtime.getRuntime().availableProcessors();
+  private int capacity = 0;
+  private boolean ordered = true;
+  @Nullable
+  private ExecutorService executor;
+
+  public ParallelDataLoader(@Nonnull List<P> partitions) {
+    this.partitions = new ArrayList<>(partitions);
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  @Nonnull
+  public ParallelDataLoader<P, T> setWorkers(int workers) {
+    if (workers < 1)
+      throw new IllegalArgumentException("workers must be positive: " + workers);
+    this.workers = workers;
+    return this;
+  }
+
+  public int getCapacity() {
+    return 0 < capacity ? capacity : 2 * workers;
+  }
+
+  @Nonnull
+  public ParallelDataLoader<P, T> setCapacity(int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    this.capacity = capacity;
+    return this;
+  }
+
+  public boolean isOrdered() {
+    return ordered;
+  }
+
+  @Nonnull
+  public ParallelDataLoader<P, T> setOrdered(boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  @Nullable
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  @Nonnull
+  public ParallelDataLoader<P, T> setExecutor(@Nullable ExecutorService executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  @Nonnull
+  public Stream<T> stream() {
+    return stream(false);
+  }
+
+  @Nonnull
+  public Stream<T> stream(boolean parallel) {
+    final Run run = new Run();
+    return StreamSupport.stream(run.new BatchSpliterator(), parallel).onClose(run::cancel);
+  }
+
+  protected abstract void read(@Nonnull P partition, @Nonnull Consumer<T> sink);
+
+  private static final class Batch<T> {
+    final int sequence;
+    @Nonnull
+    final List<T> items;
+    @Nullable
+    final Throwable error;
+
+    Batch(int sequence, @Nonnull List<T> items, @Nullable Throwable error) {
+      this.sequence = sequence;
+      this.items = items;
+      this.error = error;
+    }
+  }
+
+  private final class Run {
+    private final boolean ordered = ParallelDataLoader.this.ordered;
+    // Bounds partitions that are loading or waiting in the reorder buffer
+    private final Semaphore permits = new Semaphore(getCapacity());
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Integer, Batch<T>> ready = new HashMap<>();
+    private final ArrayDeque<Batch<T>> arrivals = new ArrayDeque<>();
+    @Nullable
+    private final ExecutorService ownPool;
+    private int consumed;
+    private volatile boolean cancelled;
+
+    Run() {
+      final int workers = Math.min(ParallelDataLoader.this.workers, Math.max(1, partitions.size()));
+      if (null == executor) {
+        ownPool = Executors.newFixedThreadPool(workers, r -> {
+          final Thread thread = new Thread(r, "ParallelDataLoader");
+          thread.setDaemon(true);
+          return thread;
+        });
+      } else {
+        ownPool = null;
+      }
+      final ExecutorService pool = null == ownPool ? executor : ownPool;
+      for (int i = 0; i < workers; i++) {
+        pool.submit(this::work);
+      }
+    }
+
+    private void work() {
+      while (!cancelled) {
+        try {
+          permits.acquire();
+        } catch (@Nonnull final InterruptedException e) {
+          return;
+        }
+        final int sequence = next.getAndIncrement();
+        if (sequence >= partitions.size() || cancelled) {
+          permits.release();
+          return;
+        }
+        final List<T> items = new ArrayList<>();
+        Throwable error = null;
+        try {
+          read(partitions.get(sequence), items::add);
+        } catch (@Nonnull final Throwable e) {
+          error = e;
+        }
+        synchronized (this) {
+          if (ordered) {
+            ready.put(sequence, new Batch<>(sequence, items, error));
+          } else {
+            arrivals.add(new Batch<>(sequence, items, error));
+          }
+          notifyAll();
+        }
+      }
+    }
+
+    @Nullable
+    private Batch<T> take() {
+      final Batch<T> batch;
+      synchronized (this) {
+        if (consumed >= partitions.size() || cancelled) {
+          shutdown();
+          return null;
+        }
+        try {
+          // Ordered mode waits for the next sequence number; later batches stay in the reorder buffer
+          while (ordered ? !ready.containsKey(consumed) : arrivals.isEmpty()) {
+            wait();
+          }
+        } catch (@Nonnull final InterruptedException e) {
+          cancel();
+          throw Util.throwException(e);
+        }
+        batch = ordered ? ready.remove(consumed) : arrivals.poll();
+        consumed++;
+        if (consumed >= partitions.size())
+          shutdown();
+      }
+      permits.release();
+      if (null != batch.error) {
+        cancel();
+        throw Util.throwException(batch.error);
+      }
+      return batch;
+    }
+
+    private void cancel() {
+      cancelled = true;
+      permits.release(partitions.size());
+      shutdown();
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+
+    private void shutdown() {
+      if (null != ownPool)
+        ownPool.shutdownNow();
+    }
+
+    private final class BatchSpliterator implements Spliterator<T> {
+      @Nullable
+      private Iterator<T> current;
+
+      @Override
+      public boolean tryAdvance(@Nonnull Consumer<? super T> action) {
+        while (null == current || !current.hasNext()) {
+          final Batch<T> batch = take();
+          if (null == batch)
+            return false;
+          current = batch.items.iterator();
+        }
+        action.accept(current.next());
+        return true;
+      }
+
+      @Nullable
+      @Override
+      public Spliterator<T> trySplit() {
+        // The prefix is whatever remains of the current batch, otherwise the next whole batch
+        if (null != current && current.hasNext()) {
+          final List<T> rest = new ArrayList<>();
+          current.forEachRemaining(rest::add);
+          current = null;
+          return rest.spliterator();
+        }
+        final Batch<T> batch = take();
+        return null == batch ? null : batch.items.spliterator();
+      }
+
+      @Override
+      public long estimateSize() {
+        return Long.MAX_VALUE;
+      }
+
+      @Override
+      public int characteristics() {
+        return ordered ? Spliterator.ORDERED : 0;
+      }
+    }
+  }
+}
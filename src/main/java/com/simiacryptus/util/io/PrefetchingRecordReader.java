@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import com.simiacryptus.util.Util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public final class PrefetchingRecordReader implements Iterator<ByteBuffer>, Closeable {
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+  private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+  @Nonnull
+  private final InputStream in;
+  private final int recordSize;
+  @Nonnull
+  private final BlockingQueue<Chunk> free;
+  @Nonnull
+  private final BlockingQueue<Chunk> full;
+  @Nonnull
+  private final Thread thread;
+  @Nullable
+  private Chunk current;
+  @Nullable
+  private ByteBuffer view;
+  private int position;
+  private boolean done;
+
+  public PrefetchingRecordReader(@Nonnull InputStream in, int recordSize) {
+    this(in, recordSize, Math.max(1, DEFAULT_BUFFER_SIZE / recordSize), 2);
+  }
+
+  public PrefetchingRecordReader(@Nonnull InputStream in, int recordSize, int recordsPerBuffer, int buffers) {
+    if (recordSize < 1 || recordsPerBuffer < 1 || buffers < 2)
+      throw new IllegalArgumentException(String.format("recordSize=%s recordsPerBuffer=%s buffers=%s", recordSize, recordsPerBuffer, buffers));
+    this.in = in;
+    this.recordSize = recordSize;
+    this.free = new ArrayBlockingQueue<>(buffers);
+    this.full = new ArrayBlockingQueue<>(buffers);
+    for (int i = 0; i < buffers; i++) {
+      free.add(new Chunk(new byte[recordSize * recordsPerBuffer]));
+    }
+    this.thread = new Thread(this::fill, "PrefetchingRecordReader");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public int getRecordSize() {
+    return recordSize;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (null != current && position < current.length)
+      return true;
+    if (done)
+      return false;
+    try {
+      if (null != current) {
+        final Chunk drained = current;
+        current = null;
+        // Complete records ahead of a read error or truncated tail are delivered first
+        if (null != drained.error) {
+          done = true;
+          throw Util.throwException(drained.error);
+        }
+        free.put(drained);
+        if (drained.eof) {
+          done = true;
+          return false;
+        }
+      }
+      // The producer fills the next buffer while this one is drained
+      final Chunk chunk = full.take();
+      current = chunk;
+      view = ByteBuffer.wrap(chunk.data);
+      position = 0;
+    } catch (@Nonnull final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Util.throwException(e);
+    }
+    return hasNext();
+  }
+
+  // The returned view is reused and only valid until the next call
+  @Nonnull
+  @Override
+  public ByteBuffer next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    assert null != view;
+    view.limit(position + recordSize).position(position);
+    position += recordSize;
+    return view;
+  }
+
+  public boolean next(@Nonnull byte[] record) {
+    if (!hasNext())
+      return false;
+    assert null != current;
+    System.arraycopy(current.data, position, record, 0, recordSize);
+    position += recordSize;
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    done = true;
+    try {
+      // Closing the stream first unblocks a read that ignores interrupts, such as on a socket
+      in.close();
+    } finally {
+      thread.interrupt();
+      try {
+        thread.join(CLOSE_TIMEOUT_MILLIS);
+      } catch (@Nonnull final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void fill() {
+    Chunk chunk = null;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        chunk = free.take();
+        chunk.length = 0;
+        chunk.eof = false;
+        while (chunk.length < chunk.data.length) {
+          final int read = in.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+          if (read < 0) {
+            chunk.eof = true;
+            break;
+          }
+          chunk.length += read;
+        }
+        if (chunk.eof && 0 != chunk.length % recordSize) {
+          chunk.error = new EOFException(String.format("Truncated record: %s trailing bytes", chunk.length % recordSize));
+          chunk.length -= chunk.length % recordSize;
+        }
+        final boolean eof = chunk.eof;
+        full.put(chunk);
+        chunk = null;
+        if (eof)
+          return;
+      }
+    } catch (@Nonnull final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (@Nonnull final Throwable e) {
+      // Publish the complete records already read, followed by the error
+      final Chunk failed = null == chunk ? new Chunk(new byte[0]) : chunk;
+      failed.length -= failed.length % recordSize;
+      failed.error = e;
+      failed.eof = true;
+      full.offer(failed);
+    }
+  }
+
+  private static final class Chunk {
+    @Nonnull
+    final byte[] data;
+    int length;
+    boolean eof;
+    @Nullable
+    Throwable error;
+
+    Chunk(@Nonnull byte[] data) {
+      this.data = data;
+    }
+  }
+}
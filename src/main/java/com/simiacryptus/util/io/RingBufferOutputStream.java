@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class RingBufferOutputStream extends OutputStream {
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+  @Nonnull
+  private final OutputStream out;
+  @Nonnull
+  private final Policy policy;
+  @Nonnull
+  private final Thread thread;
+  private final ArrayDeque<PendingFlush> pending = new ArrayDeque<>();
+  @Nullable
+  private volatile FileChannel syncChannel;
+  private volatile boolean syncMetadata;
+  @Nonnull
+  private byte[] ring;
+  private int head;
+  private int size;
+  private long accepted;
+  private long drained;
+  private long dropped;
+  private boolean closed;
+  @Nullable
+  private Throwable error;
+
+  public RingBufferOutputStream(@Nonnull OutputStream out) {
+    this(out, 1 << 20, Policy.BLOCK);
+  }
+
+  public RingBufferOutputStream(@Nonnull OutputStream out, int capacity, @Nonnull Policy policy) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    this.out = out;
+    this.policy = policy;
+    this.ring = new byte[capacity];
+    this.thread = new Thread(this::drain, "RingBufferOutputStream");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Nonnull
+  public static RingBufferOutputStream open(@Nonnull File file, int capacity, @Nonnull Policy policy, boolean sync)
+      throws IOException {
+    final FileOutputStream out = new FileOutputStream(file);
+    final RingBufferOutputStream stream = new RingBufferOutputStream(out, capacity, policy);
+    return sync ? stream.setSyncChannel(out.getChannel(), false) : stream;
+  }
+
+  @Nullable
+  public FileChannel getSyncChannel() {
+    return syncChannel;
+  }
+
+  @Nonnull
+  public RingBufferOutputStream setSyncChannel(@Nullable FileChannel syncChannel, boolean metadata) {
+    this.syncChannel = syncChannel;
+    this.syncMetadata = metadata;
+    return this;
+  }
+
+  @Nonnull
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  public synchronized int getCapacity() {
+    return ring.length;
+  }
+
+  public synchronized int getBuffered() {
+    return size;
+  }
+
+  public synchronized long getDroppedBytes() {
+    return dropped;
+  }
+
+  @Override
+  public synchronized void write(int b) throws IOException {
+    checkOpen();
+    if (!makeRoom(1))
+      return;
+    while (size == ring.length) {
+      await();
+      checkOpen();
+    }
+    ring[(head + size) % ring.length] = (byte) b;
+    size++;
+    accepted++;
+    notifyAll();
+  }
+
+  @Override
+  public synchronized void write(@Nonnull byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || off + len > b.length)
+      throw new IndexOutOfBoundsException();
+    checkOpen();
+    if (!makeRoom(len))
+      return;
+    // Only BLOCK, or GROW past its limit, gets here without room; copy in pieces as the drain frees space
+    while (len > 0) {
+      while (size == ring.length) {
+        await();
+        checkOpen();
+      }
+      final int n = Math.min(len, ring.length - size);
+      final int tail = (head + size) % ring.length;
+      final int first = Math.min(n, ring.length - tail);
+      System.arraycopy(b, off, ring, tail, first);
+      System.arraycopy(b, off + first, ring, 0, n - first);
+      size += n;
+      accepted += n;
+      off += n;
+      len -= n;
+      notifyAll();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    await(flushAsync());
+  }
+
+  // Completes once every byte accepted before this call is written, flushed and, with a sync channel, forced to disk
+  @Nonnull
+  public synchronized CompletableFuture<Void> flushAsync() {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    try {
+      checkOpen();
+    } catch (@Nonnull final IOException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+    pending.add(new PendingFlush(accepted, future));
+    notifyAll();
+    return future;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+      notifyAll();
+    }
+    try {
+      thread.join();
+    } catch (@Nonnull final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    synchronized (this) {
+      if (null != error)
+        throw new IOException("Asynchronous write failed", error);
+    }
+  }
+
+  private static void await(@Nonnull CompletableFuture<Void> future) throws IOException {
+    try {
+      future.get();
+    } catch (@Nonnull final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (@Nonnull final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw new IOException("Asynchronous write failed", cause);
+    }
+  }
+
+  // Applies the full-ring policy; false means the write is dropped
+  private boolean makeRoom(int len) {
+    if (len > ring.length - size) {
+      if (Policy.DROP == policy) {
+        dropped += len;
+        return false;
+      }
+      if (Policy.GROW == policy && (long) size + len <= MAX_CAPACITY)
+        grow(size + len);
+    }
+    return true;
+  }
+
+  private void checkOpen() throws IOException {
+    if (null != error)
+      throw new IOException("Asynchronous write failed", error);
+    if (closed)
+      throw new IOException("Stream closed");
+  }
+
+  private void await() throws IOException {
+    try {
+      wait();
+    } catch (@Nonnull final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void grow(int required) {
+    final byte[] grown = new byte[(int) Math.min(MAX_CAPACITY, Math.max(required, 2L * ring.length))];
+    // Linearize from head; bytes the drain thread is writing stay at the front, so its head update still holds
+    final int first = Math.min(size, ring.length - head);
+    System.arraycopy(ring, head, grown, 0, first);
+    System.arraycopy(ring, 0, grown, first, size - first);
+    ring = grown;
+    head = 0;
+  }
+
+  private void drain() {
+    try {
+      while (true) {
+        final byte[] buffer;
+        final int start;
+        final int length;
+        final long flushed;
+        synchronized (this) {
+          while (0 == size && pending.isEmpty() && !closed) {
+            wait();
+          }
+          if (0 == size && pending.isEmpty())
+            break;
+          // A flush is due once its watermark is written, even if later bytes are still buffered
+          flushed = !pending.isEmpty() && pending.peek().watermark <= drained ? drained : -1;
+          buffer = ring;
+          start = head;
+          // Write the whole contiguous region in one call; a wrapped tail goes out on the next pass
+          length = Math.min(size, ring.length - head);
+        }
+        if (0 <= flushed) {
+          sync();
+          synchronized (this) {
+            while (!pending.isEmpty() && pending.peek().watermark <= flushed) {
+              pending.poll().future.complete(null);
+            }
+            notifyAll();
+          }
+          continue;
+        }
+        out.write(buffer, start, length);
+        synchronized (this) {
+          head = (head + length) % ring.length;
+          size -= length;
+          drained += length;
+          notifyAll();
+        }
+      }
+      sync();
+    } catch (@Nonnull final Throwable e) {
+      synchronized (this) {
+        error = e;
+        notifyAll();
+      }
+    } finally {
+      try {
+        out.close();
+      } catch (@Nonnull final IOException e) {
+        synchronized (this) {
+          if (null == error)
+            error = e;
+        }
+      }
+      synchronized (this) {
+        // Only the first failure is kept; every outstanding flush reports it
+        final Throwable failure = null == error ? new IOException("Stream closed") : error;
+        while (!pending.isEmpty()) {
+          pending.poll().future.completeExceptionally(failure);
+        }
+      }
+    }
+  }
+
+  private void sync() throws IOException {
+    out.flush();
+    final FileChannel channel = syncChannel;
+    if (null != channel)
+      channel.force(syncMetadata);
+  }
+
+  private static final class PendingFlush {
+    final long watermark;
+    @Nonnull
+    final CompletableFuture<Void> future;
+
+    PendingFlush(long watermark, @Nonnull CompletableFuture<Void> future) {
+      this.watermark = watermark;
+      this.future = future;
+    }
+  }
+
+  public enum Policy {
+    BLOCK,
+    GROW,
+    DROP
+  }
+}
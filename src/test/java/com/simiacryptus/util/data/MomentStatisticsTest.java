@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.data;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class MomentStatisticsTest {
+  @Nonnull
+  Random random = new Random(42);
+
+  @Test
+  @Tag("UnitTest")
+  public void testLargeOffset() {
+    final double[] data = IntStream.range(0, 100000).mapToDouble(i -> 1e9 + random.nextGaussian()).toArray();
+    final MomentStatistics statistics = new MomentStatistics().add(data);
+    Assertions.assertEquals(1.0, statistics.getStdDev(), 0.02);
+    Assertions.assertEquals(0.0, statistics.getSkewness(), 0.05);
+    Assertions.assertEquals(0.0, statistics.getKurtosis(), 0.1);
+  }
+
+  @Test
+  @Tag("UnitTest")
+  public void testParallelMerge() {
+    final double[] data = IntStream.range(0, 100000).mapToDouble(i -> Math.exp(random.nextGaussian())).toArray();
+    final MomentStatistics sequential = new MomentStatistics();
+    Arrays.stream(data).forEach(sequential::add);
+    final MomentStatistics parallel = Arrays.stream(data).boxed().parallel().collect(MomentStatistics.COLLECTOR);
+    Assertions.assertEquals(sequential.getCount(), parallel.getCount());
+    Assertions.assertEquals(sequential.getMean(), parallel.getMean(), 1e-9);
+    Assertions.assertEquals(sequential.getVariance(), parallel.getVariance(), 1e-9);
+    Assertions.assertEquals(sequential.getSkewness(), parallel.getSkewness(), 1e-9);
+    Assertions.assertEquals(sequential.getKurtosis(), parallel.getKurtosis(), 1e-9);
+    Assertions.assertEquals(sequential.getMin(), parallel.getMin(), 0.0);
+    Assertions.assertEquals(sequential.getMax(), parallel.getMax(), 0.0);
+    Assertions.assertEquals(sequential.getMeanPower(), parallel.getMeanPower(), 1e-9);
+  }
+}
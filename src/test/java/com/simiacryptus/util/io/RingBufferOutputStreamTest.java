@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 by Andrew Charneski.
+ *
+ * The author licenses this file to you under the
+ * Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance
+ * with the License.  You may obtain a copy
+ * of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.simiacryptus.util.io;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class RingBufferOutputStreamTest {
+  @Test
+  @Tag("UnitTest")
+  public void testFlushWithContinuousWriter() {
+    final AtomicLong received = new AtomicLong();
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicLong written = new AtomicLong();
+    final OutputStream sink = new OutputStream() {
+      @Override
+      public void write(int b) {
+        received.incrementAndGet();
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        // Wait for the writer to add more, so the ring is never empty between drain passes while it runs
+        final long target = written.get() + 1;
+        while (running.get() && written.get() < target) {
+          LockSupport.parkNanos(10_000);
+        }
+        received.addAndGet(len);
+      }
+    };
+    final RingBufferOutputStream stream = new RingBufferOutputStream(sink, 256, RingBufferOutputStream.Policy.GROW);
+    final Thread writer = new Thread(() -> {
+      final byte[] data = new byte[64];
+      try {
+        while (running.get()) {
+          stream.write(data);
+          written.addAndGet(data.length);
+          LockSupport.parkNanos(10_000);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    writer.start();
+    Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+      for (int i = 0; i < 100; i++) {
+        while (written.get() < 1024L * (i + 1)) {
+          Thread.sleep(1);
+        }
+        final long before = written.get();
+        stream.flush();
+        Assertions.assertTrue(received.get() >= before);
+      }
+      running.set(false);
+      writer.join();
+      stream.close();
+    });
+    Assertions.assertEquals(written.get(), received.get());
+  }
+}